@@ -1,58 +1,107 @@
 package org.sheedon.retrofit.gson
 
 import org.sheedon.mqtt.retrofit.FormBodyConverter
+import java.lang.reflect.Type
 
 /**
  * 参数内容主体
  * 基础参数，格式：{"name":"value","name1":"value1"}
  *
+ * 每个字段添加时直接写入缓冲区，缓冲区初始容量取同一方法上一次输出的长度。
+ * 元素为整数、布尔值的集合、数组类型字段逐个元素写为 JSON 数组，格式：{"name":[value1,value2]}；
+ * 其他元素类型（例如字符串）的字段由 Gson 整体序列化，以保证字符串元素带引号并正确转义。
+ *
  * @Author: sheedon
  * @Email: sheedonsun@163.com
  * @Date: 2022/5/24 22:02
  */
-class FormBody(
-    private val encodedNames: List<String> = ArrayList(),
-    private val encodedValues: List<String> = ArrayList()
-) {
-
-
-    private fun convertToString(): String {
-        val builder = StringBuilder()
-        builder.append("{")
-
-        val size = encodedNames.size
-        for (index in 0 until size) {
-            val name = encodedNames[index]
-            val values = encodedValues[index]
-            builder.append(convert(name, values))
-            builder.append(",")
+class FormBody private constructor() {
+
+    class Builder private constructor(private val sizeHint: SizeHint) : FormBodyConverter {
+        private var buffer: StringBuilder? = null
+
+        // 当前数组字段第一个元素的位置
+        private var arrayStart = 0
+
+        constructor() : this(SizeHint())
+
+        override fun add(name: String, value: String) {
+            startField(name).append(value)
         }
 
-        if (builder.length > 1) {
-            builder.deleteCharAt(builder.length - 1)
+        override fun expandArray(elementType: Type): Boolean {
+            return elementType in LITERAL_TYPES
         }
-        builder.append("}")
 
-        return builder.toString()
-    }
+        override fun beginArray(name: String) {
+            arrayStart = startField(name).append('[').length
+        }
 
-    private fun convert(name: String, values: String): String {
-        return "\"$name\":$values"
-    }
+        /**
+         * 写入字段名，返回缓冲区
+         */
+        private fun startField(name: String): StringBuilder {
+            var buffer = this.buffer
+            if (buffer == null) {
+                buffer = StringBuilder(sizeHint.capacity)
+                buffer.append('{')
+                this.buffer = buffer
+            } else {
+                buffer.append(',')
+            }
+            return buffer.append('"').append(name).append("\":")
+        }
 
-    class Builder : FormBodyConverter {
-        private val names: MutableList<String> = java.util.ArrayList()
-        private val values: MutableList<String> = java.util.ArrayList()
-        override fun add(name: String, value: String) {
-            names.add(name)
-            values.add(value)
+        override fun addArrayValue(name: String, value: String) {
+            val buffer = this.buffer ?: return
+            if (buffer.length > arrayStart) {
+                buffer.append(',')
+            }
+            buffer.append(value)
+        }
+
+        override fun endArray(name: String) {
+            buffer?.append(']')
         }
 
         override fun build(): String {
-            return FormBody(names, values).convertToString()
+            val buffer = this.buffer ?: return "{}"
+            val body = buffer.append('}').toString()
+            buffer.setLength(buffer.length - 1)
+            sizeHint.capacity = body.length + SLACK
+            return body
         }
 
-        override fun clone() = Builder()
+        /**
+         * 新构建者与模板共用输出长度记录
+         */
+        override fun newBuilder(): FormBodyConverter = Builder(sizeHint)
+
+        override fun clone(): FormBodyConverter = newBuilder()
     }
 
-}
\ No newline at end of file
+    /**
+     * 上一次输出的长度，作为下一次缓冲区的初始容量
+     */
+    private class SizeHint {
+        @Volatile
+        var capacity = DEFAULT_CAPACITY
+    }
+
+    private companion object {
+        // 首次使用时的初始容量
+        const val DEFAULT_CAPACITY = 64
+
+        // 为长度波动预留的余量
+        const val SLACK = 16
+
+        // toString() 结果可直接作为 JSON 数组元素的类型
+        val LITERAL_TYPES: Set<Type> = setOf(
+            Int::class.javaPrimitiveType!!, Int::class.javaObjectType,
+            Long::class.javaPrimitiveType!!, Long::class.javaObjectType,
+            Short::class.javaPrimitiveType!!, Short::class.javaObjectType,
+            Byte::class.javaPrimitiveType!!, Byte::class.javaObjectType,
+            Boolean::class.javaPrimitiveType!!, Boolean::class.javaObjectType
+        )
+    }
+}
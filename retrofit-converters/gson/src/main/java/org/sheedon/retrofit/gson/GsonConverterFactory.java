@@ -11,6 +11,8 @@ import org.sheedon.mqtt.retrofit.Retrofit;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 通过 Gson 用于 JSON 的 {@linkplain Converter.Factory 转换器}的实例化使用。
@@ -42,10 +44,34 @@ public class GsonConverterFactory extends Converter.Factory {
         return new GsonConverterFactory(gson);
     }
 
+    private static final Class<?>[] INTEGER_TYPES = {
+            int.class, Integer.class, long.class, Long.class,
+            short.class, Short.class, byte.class, Byte.class
+    };
+
     private final Gson gson;
+    // gson 中仍为内置实现的整数适配器
+    private final List<TypeAdapter<?>> integerAdapters;
 
     private GsonConverterFactory(Gson gson) {
         this.gson = gson;
+        this.integerAdapters = integerAdapters(gson);
+    }
+
+    /**
+     * 取出 {@code gson} 中未被自定义适配器替换的整数适配器。
+     * 内置适配器为所有 Gson 实例共用，与默认 Gson 的适配器相同即为内置实现
+     */
+    private static List<TypeAdapter<?>> integerAdapters(Gson gson) {
+        Gson defaults = new Gson();
+        List<TypeAdapter<?>> adapters = new ArrayList<>(INTEGER_TYPES.length);
+        for (Class<?> type : INTEGER_TYPES) {
+            TypeAdapter<?> adapter = gson.getAdapter(type);
+            if (adapter == defaults.getAdapter(type)) {
+                adapters.add(adapter);
+            }
+        }
+        return adapters;
     }
 
     @Override
@@ -63,10 +89,30 @@ public class GsonConverterFactory extends Converter.Factory {
 
     @Override
     public Converter<?, String> stringConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (type == String.class) {
+            // 字符串原样输出，交给内置转换器
+            return null;
+        }
         TypeAdapter<?> adapter = gson.getAdapter(TypeToken.get(type));
+        if (isInteger(adapter)) {
+            // 与 toString() 结果相同，交给内置转换器，整数类型的 @Path 可直接写入数字
+            return null;
+        }
         return new GsonStringConverter<>(adapter);
     }
 
+    /**
+     * 是否为 Gson 内置的整数适配器，未注册自定义适配器时输出与 toString() 相同
+     */
+    private boolean isInteger(TypeAdapter<?> adapter) {
+        for (TypeAdapter<?> integerAdapter : integerAdapters) {
+            if (adapter == integerAdapter) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public FormBodyConverter formBodyConverter() {
         return new FormBody.Builder();
@@ -0,0 +1,62 @@
+package org.sheedon.retrofit.gson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+import org.sheedon.mqtt.retrofit.Converter;
+import org.sheedon.mqtt.retrofit.FormBodyConverter;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+public class FormBodyTest {
+
+    private final Gson gson = new Gson();
+    private final GsonConverterFactory factory = GsonConverterFactory.create(gson);
+
+    @Test
+    public void stringListRoundTrips() throws Exception {
+        Type type = new TypeToken<List<String>>() {
+        }.getType();
+        List<String> orgList = Arrays.asList("11", "22", "a\"b");
+        FormBodyConverter builder = factory.formBodyConverter();
+        assertFalse(builder.expandArray(String.class));
+
+        @SuppressWarnings("unchecked")
+        Converter<List<String>, String> converter =
+                (Converter<List<String>, String>) factory.stringConverter(type, null, null);
+        builder.add("orgList", converter.convert(orgList));
+
+        String body = builder.build();
+        assertEquals("{\"orgList\":[\"11\",\"22\",\"a\\\"b\"]}", body);
+        JsonObject json = gson.fromJson(body, JsonObject.class);
+        List<String> parsed = gson.fromJson(json.get("orgList"), type);
+        assertEquals(orgList, parsed);
+    }
+
+    @Test
+    public void integerArrayExpandsPerElement() {
+        FormBodyConverter builder = factory.formBodyConverter();
+        assertTrue(builder.expandArray(int.class));
+        assertTrue(builder.expandArray(Integer.class));
+
+        builder.add("id", "7");
+        builder.beginArray("values");
+        builder.addArrayValue("values", "1");
+        builder.addArrayValue("values", "2");
+        builder.addArrayValue("values", "3");
+        builder.endArray("values");
+
+        String body = builder.build();
+        assertEquals("{\"id\":7,\"values\":[1,2,3]}", body);
+        int[] parsed = gson.fromJson(gson.fromJson(body, JsonObject.class).get("values"), int[].class);
+        assertEquals(Arrays.toString(new int[]{1, 2, 3}), Arrays.toString(parsed));
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe;
+import org.sheedon.mqtt.Request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link org.sheedon.mqtt.retrofit.mqtt.Batch @Batch} 方法的 Observable，
+ * 将 {@code delegate} 逐条转换后的消息按数量或时间窗口合并为一批再回调。
+ * <p>
+ * 位于回调线程适配之前，因此每批只切换一次回调线程。批次在锁内取出，在锁外按取出顺序串行回调，
+ * 回调耗时不会阻塞消息接收；时间窗口到期的批次交给 {@code flushExecutor} 回调，不占用共用的调度线程。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:55
+ */
+final class BatchingObservable<E> implements Observable<List<E>> {
+
+    private final Observable<E> delegate;
+    private final int maxSize;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Executor flushExecutor;
+
+    @GuardedBy("this")
+    private @Nullable
+    Consumer<List<E>> consumer;
+    @GuardedBy("this")
+    private @Nullable
+    List<E> batch;
+    @GuardedBy("this")
+    private @Nullable
+    Response<E> last;
+    @GuardedBy("this")
+    private @Nullable
+    ScheduledFuture<?> timer;
+    // 已取出、等待回调的批次或失败
+    @GuardedBy("this")
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    @GuardedBy("this")
+    private boolean delivering;
+
+    /**
+     * @param scheduler     时间窗口计时使用的调度线程
+     * @param flushExecutor 时间窗口到期时回调批次的线程
+     */
+    BatchingObservable(Observable<E> delegate, int maxSize, long maxDelayMillis,
+                       ScheduledExecutorService scheduler, Executor flushExecutor) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.scheduler = scheduler;
+        this.flushExecutor = flushExecutor;
+    }
+
+    @Override
+    public void enqueue() {
+        delegate.enqueue();
+    }
+
+    @Override
+    public void enqueue(@NonNull Consumer<List<E>> consumer) {
+        Objects.requireNonNull(consumer, "consumer == null");
+        synchronized (this) {
+            this.consumer = consumer;
+        }
+        delegate.enqueue(new Consumer<E>() {
+            @Override
+            public void onResponse(@NonNull Observable<E> observable, @Nullable Response<E> response) {
+                add(response);
+            }
+
+            @Override
+            public void onFailure(@NonNull Observable<E> observable, @Nullable Throwable t) {
+                fail(t);
+            }
+        });
+    }
+
+    @Override
+    public void enqueue(@NonNull Subscribe<List<E>> subscribe) {
+        Objects.requireNonNull(subscribe, "subscribe == null");
+        delegate.enqueue(new Subscribe<E>() {
+            @Override
+            public void onResponse(@NonNull Observable<E> observable, @Nullable MqttSubscribe response) {
+                subscribe.onResponse(BatchingObservable.this, response);
+            }
+
+            @Override
+            public void onFailure(@NonNull Observable<E> observable, @Nullable Throwable t) {
+                subscribe.onFailure(BatchingObservable.this, t);
+            }
+        });
+    }
+
+    @Override
+    public void enqueue(@NonNull FullConsumer<List<E>> fullConsumer) {
+        Objects.requireNonNull(fullConsumer, "fullConsumer == null");
+        synchronized (this) {
+            this.consumer = fullConsumer;
+        }
+        delegate.enqueue(new FullConsumer<E>() {
+            @Override
+            public void onResponse(@NonNull Observable<E> observable, @Nullable Response<E> response) {
+                add(response);
+            }
+
+            @Override
+            public void onResponse(@NonNull Observable<E> observable, @Nullable MqttSubscribe response) {
+                fullConsumer.onResponse(BatchingObservable.this, response);
+            }
+
+            @Override
+            public void onFailure(@NonNull Observable<E> observable, @Nullable Throwable t) {
+                fail(t);
+            }
+        });
+    }
+
+    /**
+     * 取消订阅前先回调尚未满批的消息
+     */
+    @Override
+    public void unsubscribe(@Nullable Subscribe<List<E>> callback) {
+        synchronized (this) {
+            flush();
+            consumer = null;
+        }
+        deliver();
+        delegate.unsubscribe(callback == null ? null : new Subscribe<E>() {
+            @Override
+            public void onResponse(@NonNull Observable<E> observable, @Nullable MqttSubscribe response) {
+                callback.onResponse(BatchingObservable.this, response);
+            }
+
+            @Override
+            public void onFailure(@NonNull Observable<E> observable, @Nullable Throwable t) {
+                callback.onFailure(BatchingObservable.this, t);
+            }
+        });
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return delegate.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            cancelTimer();
+            batch = null;
+            last = null;
+            consumer = null;
+            pending.clear();
+        }
+        delegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return delegate.isCanceled();
+    }
+
+    @NonNull
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+
+    @NonNull
+    @Override
+    public org.sheedon.mqtt.Subscribe subscribe() {
+        return delegate.subscribe();
+    }
+
+    private void add(@Nullable Response<E> response) {
+        synchronized (this) {
+            if (response == null || consumer == null) {
+                return;
+            }
+            List<E> batch = this.batch;
+            if (batch == null) {
+                batch = new ArrayList<>(maxSize);
+                this.batch = batch;
+                List<E> current = batch;
+                timer = scheduler.schedule(() -> flushExecutor.execute(() -> flushExpired(current)),
+                        maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.add(response.body());
+            last = response;
+            if (batch.size() < maxSize) {
+                return;
+            }
+            flush();
+        }
+        deliver();
+    }
+
+    /**
+     * 时间窗口到期，该批尚未因数量满而回调时回调
+     */
+    private void flushExpired(List<E> expired) {
+        synchronized (this) {
+            if (batch != expired) {
+                return;
+            }
+            timer = null;
+            flush();
+        }
+        deliver();
+    }
+
+    /**
+     * 取出当前批次，放入等待回调的队列，由调用方在锁外通过 {@link #deliver()} 回调
+     */
+    @GuardedBy("this")
+    private void flush() {
+        cancelTimer();
+        List<E> batch = this.batch;
+        Response<E> last = this.last;
+        this.batch = null;
+        this.last = null;
+        Consumer<List<E>> consumer = this.consumer;
+        if (batch == null || last == null || consumer == null) {
+            return;
+        }
+        Response<List<E>> response = Response.success(batch, last);
+        pending.add(() -> consumer.onResponse(this, response));
+    }
+
+    private void fail(@Nullable Throwable t) {
+        synchronized (this) {
+            flush();
+            Consumer<List<E>> consumer = this.consumer;
+            if (consumer != null) {
+                pending.add(() -> consumer.onFailure(this, t));
+            }
+        }
+        deliver();
+    }
+
+    /**
+     * 在锁外按顺序回调等待中的批次，同一时间只有一个线程回调，其他线程放入队列后直接返回
+     */
+    private void deliver() {
+        synchronized (this) {
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        boolean done = false;
+        try {
+            while (true) {
+                Runnable next;
+                synchronized (this) {
+                    next = pending.poll();
+                    if (next == null) {
+                        delivering = false;
+                        done = true;
+                        return;
+                    }
+                }
+                next.run();
+            }
+        } finally {
+            if (!done) {
+                // 回调抛出异常，剩余批次由下一次回调继续
+                synchronized (this) {
+                    delivering = false;
+                }
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import org.sheedon.mqtt.retrofit.mqtt.Buffer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Buffer @Buffer} 的环形缓冲区。
+ * <p>
+ * 接收线程通过 {@link #offer(Object)} 写入，缓冲区由空变为非空时向回调线程提交一次分发任务，
+ * 分发任务串行取出并交给 {@link Sink}，每次最多分发 {@code capacity} 条后让出回调线程。
+ * 按 {@link Buffer.Overflow#ERROR} 溢出时只累计丢弃数量，由分发任务在取完缓冲区后合并反馈一次。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:45
+ */
+final class BoundedBuffer<T> {
+
+    /**
+     * 在回调线程中接收缓冲区取出的元素
+     */
+    interface Sink<T> {
+        void deliver(T item);
+
+        /**
+         * 按 {@link Buffer.Overflow#ERROR} 溢出，每个分发周期最多回调一次
+         *
+         * @param dropped 本周期内丢弃的消息数量
+         */
+        void overflow(int dropped);
+    }
+
+    private final Executor executor;
+    private final int capacity;
+    private final Buffer.Overflow overflow;
+
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final Object[] items;
+    @GuardedBy("lock")
+    private int head;
+    @GuardedBy("lock")
+    private int size;
+    @GuardedBy("lock")
+    private boolean draining;
+    @GuardedBy("lock")
+    private boolean closed;
+    @GuardedBy("lock")
+    private long droppedCount;
+    // 尚未反馈的溢出数量
+    @GuardedBy("lock")
+    private int overflowed;
+    @GuardedBy("lock")
+    private @Nullable
+    Sink<T> sink;
+
+    BoundedBuffer(Executor executor, int capacity, Buffer.Overflow overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("@Buffer capacity <= 0");
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.items = new Object[capacity];
+    }
+
+    /**
+     * 开始接收，之前写入的元素将被丢弃
+     */
+    void start(Sink<T> sink) {
+        synchronized (lock) {
+            clear();
+            this.sink = sink;
+            this.closed = false;
+        }
+    }
+
+    /**
+     * 写入一个元素
+     */
+    void offer(T item) {
+        boolean schedule;
+        synchronized (lock) {
+            if (closed || sink == null) {
+                return;
+            }
+            if (size == capacity) {
+                switch (overflow) {
+                    case DROP_OLDEST:
+                        items[head] = null;
+                        head = (head + 1) % capacity;
+                        size--;
+                        droppedCount++;
+                        break;
+                    case DROP_NEWEST:
+                        droppedCount++;
+                        return;
+                    case BLOCK:
+                        if (!awaitSpace()) {
+                            droppedCount++;
+                            return;
+                        }
+                        break;
+                    case ERROR:
+                    default:
+                        droppedCount++;
+                        overflowed++;
+                        item = null;
+                        break;
+                }
+            }
+            if (item != null) {
+                items[(head + size) % capacity] = item;
+                size++;
+            }
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * 等待缓冲区出现空位，关闭或线程被中断时返回 false。
+     * 等待期间阻塞的是 MQTT 客户端的消息接收线程，见 {@link Buffer.Overflow#BLOCK}。
+     */
+    @GuardedBy("lock")
+    private boolean awaitSpace() {
+        try {
+            while (size == capacity && !closed) {
+                lock.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !closed;
+    }
+
+    private void drain() {
+        boolean idle = false;
+        try {
+            for (int delivered = 0; delivered < capacity; delivered++) {
+                T item;
+                Sink<T> sink;
+                int dropped = 0;
+                synchronized (lock) {
+                    item = poll();
+                    sink = this.sink;
+                    if (item == null || sink == null) {
+                        if (sink != null) {
+                            dropped = overflowed;
+                        }
+                        overflowed = 0;
+                        draining = false;
+                        idle = true;
+                    }
+                }
+                if (item == null || sink == null) {
+                    if (dropped > 0) {
+                        sink.overflow(dropped);
+                    }
+                    return;
+                }
+                sink.deliver(item);
+            }
+        } finally {
+            // 达到单次分发上限或回调抛出异常时，重新提交以分发剩余元素
+            if (!idle) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private T poll() {
+        if (size == 0) {
+            return null;
+        }
+        T item = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % capacity;
+        size--;
+        if (overflow == Buffer.Overflow.BLOCK) {
+            lock.notifyAll();
+        }
+        return item;
+    }
+
+    @GuardedBy("lock")
+    private void clear() {
+        for (int i = 0; i < size; i++) {
+            items[(head + i) % capacity] = null;
+        }
+        head = 0;
+        size = 0;
+        overflowed = 0;
+    }
+
+    /**
+     * 停止接收并清空缓冲区，唤醒被阻塞的接收线程
+     */
+    void close() {
+        synchronized (lock) {
+            closed = true;
+            sink = null;
+            clear();
+            lock.notifyAll();
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    Buffer.Overflow overflow() {
+        return overflow;
+    }
+
+    int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    long droppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+}
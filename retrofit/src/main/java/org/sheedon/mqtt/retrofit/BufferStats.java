@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import org.sheedon.mqtt.retrofit.mqtt.Buffer;
+
+/**
+ * {@link Buffer @Buffer} 缓冲区的运行状态，各方法每次调用都返回当前值。
+ *
+ * <pre><code>
+ * Observable&lt;Telemetry&gt; observable = api.telemetry();
+ * observable.enqueue(consumer);
+ * BufferStats stats = BufferStats.of(observable);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:45
+ */
+public final class BufferStats {
+
+    private final BoundedBuffer<?> buffer;
+
+    BufferStats(BoundedBuffer<?> buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * 获取 {@code observable} 的缓冲区状态，方法未配置 {@link Buffer @Buffer} 时返回 null
+     */
+    public static @Nullable
+    BufferStats of(Observable<?> observable) {
+        if (observable instanceof DefaultCallAdapterFactory.ExecutorCallbackObservable) {
+            return ((DefaultCallAdapterFactory.ExecutorCallbackObservable<?>) observable).bufferStats();
+        }
+        return null;
+    }
+
+    /**
+     * 缓冲区容量
+     */
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public Buffer.Overflow overflow() {
+        return buffer.overflow();
+    }
+
+    /**
+     * 缓冲区中等待分发的消息数
+     */
+    public int size() {
+        return buffer.size();
+    }
+
+    /**
+     * 因缓冲区已满而丢弃的消息数
+     */
+    public long droppedCount() {
+        return buffer.droppedCount();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferStats{" +
+                "size=" + size() +
+                ", capacity=" + capacity() +
+                ", droppedCount=" + droppedCount() +
+                ", overflow=" + overflow() +
+                '}';
+    }
+}
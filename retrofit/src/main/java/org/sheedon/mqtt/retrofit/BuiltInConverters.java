@@ -32,7 +32,9 @@ package org.sheedon.mqtt.retrofit;
 import org.sheedon.mqtt.RequestBody;
 import org.sheedon.mqtt.ResponseBody;
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
 import java.lang.reflect.Type;
 
 import kotlin.Unit;
@@ -171,4 +173,65 @@ public final class BuiltInConverters extends Converter.Factory {
             return value.toString();
         }
     }
+
+    /**
+     * {@link Iterable} 类型的 {@link org.sheedon.mqtt.retrofit.mqtt.Path @Path}，
+     * 各元素转换后以 {@link #SEPARATOR} 连接，null 元素被跳过
+     */
+    static final class IterableJoiningConverter<T> implements Converter<Iterable<T>, String> {
+        static final char SEPARATOR = ',';
+
+        private final Converter<T, String> converter;
+
+        IterableJoiningConverter(Converter<T, String> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public String convert(Iterable<T> values) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            for (T value : values) {
+                String converted = value == null ? null : converter.convert(value);
+                if (converted == null) continue;
+                if (builder.length() > 0) {
+                    builder.append(SEPARATOR);
+                }
+                builder.append(converted);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 数组类型的 {@link org.sheedon.mqtt.retrofit.mqtt.Path @Path}，
+     * 各元素转换后以 {@link IterableJoiningConverter#SEPARATOR} 连接，null 元素被跳过。
+     * 元素按 {@link Object#toString()} 转换时，基本类型数组不装箱。
+     */
+    static final class ArrayJoiningConverter<T> implements Converter<Object, String> {
+        private final Converter<T, String> converter;
+
+        ArrayJoiningConverter(Converter<T, String> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public String convert(Object values) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            if (converter == ToStringConverter.INSTANCE
+                    && Utils.appendPrimitiveArray(builder, values, IterableJoiningConverter.SEPARATOR)) {
+                return builder.toString();
+            }
+            for (int i = 0, size = Array.getLength(values); i < size; i++) {
+                T value = (T) Array.get(values, i);
+                String converted = value == null ? null : converter.convert(value);
+                if (converted == null) continue;
+                if (builder.length() > 0) {
+                    builder.append(IterableJoiningConverter.SEPARATOR);
+                }
+                builder.append(converted);
+            }
+            return builder.toString();
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import org.sheedon.mqtt.CallFactory;
+import org.sheedon.mqtt.ObservableFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 根据主题选择本次调用使用的 {@link CallFactory}、{@link ObservableFactory}。
+ * <p>
+ * 1. 单连接时，所有调用都使用同一个工厂。
+ * 2. 多连接时，通过主题的一致性哈希将调用分散到各个连接上，同一主题始终落在同一个连接，
+ * 因此订阅以及请求响应的订阅主题会固定在拥有该主题的连接上。连接数变化时，只有约 1/N 的主题会迁移。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 16:05
+ */
+abstract class ClientRouter {
+
+    /**
+     * 单连接的路由
+     */
+    static ClientRouter single(CallFactory callFactory, ObservableFactory observableFactory) {
+        return new Single(callFactory, observableFactory);
+    }
+
+    /**
+     * 多连接的一致性哈希路由，{@code callFactories} 与 {@code observableFactories} 一一对应，
+     * 通常是同一组 {@link org.sheedon.mqtt.OkMqttClient}。
+     */
+    static ClientRouter sharded(List<? extends CallFactory> callFactories,
+                                List<? extends ObservableFactory> observableFactories) {
+        if (callFactories.size() != observableFactories.size()) {
+            throw new IllegalArgumentException("callFactories and observableFactories size mismatch.");
+        }
+        if (callFactories.size() == 1) {
+            return single(callFactories.get(0), observableFactories.get(0));
+        }
+        return new Sharded(callFactories, observableFactories);
+    }
+
+    /**
+     * 返回 {@code topic} 所在连接的 CallFactory，{@code topic} 为空时返回第一个连接。
+     */
+    abstract CallFactory callFactory(@Nullable String topic);
+
+    /**
+     * 返回 {@code topic} 所在连接的 ObservableFactory，{@code topic} 为空时返回第一个连接。
+     */
+    abstract ObservableFactory observableFactory(@Nullable String topic);
+
+    /**
+     * 连接数
+     */
+    abstract int size();
+
+    private static final class Single extends ClientRouter {
+        private final CallFactory callFactory;
+        private final ObservableFactory observableFactory;
+
+        Single(CallFactory callFactory, ObservableFactory observableFactory) {
+            this.callFactory = callFactory;
+            this.observableFactory = observableFactory;
+        }
+
+        @Override
+        CallFactory callFactory(@Nullable String topic) {
+            return callFactory;
+        }
+
+        @Override
+        ObservableFactory observableFactory(@Nullable String topic) {
+            return observableFactory;
+        }
+
+        @Override
+        int size() {
+            return 1;
+        }
+    }
+
+    private static final class Sharded extends ClientRouter {
+        // 每个连接在哈希环上的虚拟节点数，用于让主题分布更均匀
+        private static final int VIRTUAL_NODES = 160;
+
+        private final CallFactory[] callFactories;
+        private final ObservableFactory[] observableFactories;
+        // 按哈希值升序排列的虚拟节点，以及虚拟节点对应的连接下标
+        private final int[] ring;
+        private final int[] owners;
+
+        Sharded(List<? extends CallFactory> callFactories,
+                List<? extends ObservableFactory> observableFactories) {
+            int size = callFactories.size();
+            this.callFactories = callFactories.toArray(new CallFactory[size]);
+            this.observableFactories = observableFactories.toArray(new ObservableFactory[size]);
+
+            long[] nodes = new long[size * VIRTUAL_NODES];
+            for (int shard = 0, index = 0; shard < size; shard++) {
+                for (int node = 0; node < VIRTUAL_NODES; node++, index++) {
+                    int hash = hash("shard-" + shard + "#" + node);
+                    // 高 32 位存哈希值（按有符号排序即可），低 32 位存连接下标
+                    nodes[index] = ((long) hash << 32) | shard;
+                }
+            }
+            Arrays.sort(nodes);
+
+            ring = new int[nodes.length];
+            owners = new int[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                ring[i] = (int) (nodes[i] >> 32);
+                owners[i] = (int) nodes[i];
+            }
+        }
+
+        @Override
+        CallFactory callFactory(@Nullable String topic) {
+            return callFactories[shardOf(topic)];
+        }
+
+        @Override
+        ObservableFactory observableFactory(@Nullable String topic) {
+            return observableFactories[shardOf(topic)];
+        }
+
+        @Override
+        int size() {
+            return callFactories.length;
+        }
+
+        private int shardOf(@Nullable String topic) {
+            if (topic == null || topic.isEmpty()) {
+                return 0;
+            }
+            int index = Arrays.binarySearch(ring, hash(topic));
+            if (index < 0) {
+                // 取顺时针方向的第一个虚拟节点
+                index = -index - 1;
+                if (index == ring.length) {
+                    index = 0;
+                }
+            }
+            return owners[index];
+        }
+
+        /**
+         * FNV-1a 哈希，再经 murmur3 的 fmix32 打散，避免相近主题聚集在哈希环的同一段
+         */
+        private static int hash(String value) {
+            int hash = 0x811c9dc5;
+            for (int i = 0, length = value.length(); i < length; i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x01000193;
+            }
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
+import org.sheedon.mqtt.FullCallback;
+import org.sheedon.mqtt.Subscribe;
+import org.sheedon.mqtt.SubscriptionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link org.sheedon.mqtt.retrofit.mqtt.Correlated @Correlated} 调用的请求响应匹配。
+ * <p>
+ * 1. 关联 ID 由进程内随机前缀加自增序号组成，序号直接作为等待表的下标，因此绝大多数情况下一次寻址即可命中。
+ * 2. 等待表为无锁的开放寻址表，注册、匹配、超时都通过 CAS 抢占槽位，保证每个调用只完成一次。
+ * 3. 同一响应主题只订阅一次，订阅成功前的调用先排队，订阅确认后再发送，避免响应先于订阅到达。
+ * 4. 超时由 {@link DeadlineWheel} 处理，登记和完成调用时只需 O(1) 登记、取消截止时间，无需扫描等待表。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 19:02
+ */
+final class CorrelationEngine {
+
+    // 等待表容量，即同时等待响应的调用上限
+    static final int CAPACITY = 1 << 14;
+
+    private static final Pending TOMBSTONE = new Pending(-1, 0) {
+        @Override
+        void publish() {
+        }
+
+        @Override
+        void onReply(org.sheedon.mqtt.Response rawResponse) {
+        }
+
+        @Override
+        void onFailure(Throwable t) {
+        }
+    };
+
+    private final ClientRouter clientRouter;
+    private final DeadlineWheel deadlineWheel;
+    // 4 位 36 进制随机前缀，避免进程重启后误收上一次的响应
+    private final String prefix = Integer.toString(36 * 36 * 36 + new Random().nextInt(35 * 36 * 36 * 36), 36);
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final AtomicReferenceArray<Pending> slots = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicInteger maxProbe = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, ReplyChannel> channels = new ConcurrentHashMap<>();
+
+    CorrelationEngine(ClientRouter clientRouter, DeadlineWheel deadlineWheel) {
+        this.clientRouter = clientRouter;
+        this.deadlineWheel = deadlineWheel;
+    }
+
+    /**
+     * 生成下一个关联 ID 的序号
+     */
+    long nextId() {
+        return nextId.incrementAndGet();
+    }
+
+    /**
+     * 序号对应的关联 ID 字符串
+     */
+    String format(long id) {
+        return prefix + Long.toString(id, 36);
+    }
+
+    /**
+     * 注册等待响应的调用，并在响应主题订阅成功后发送请求
+     *
+     * @param replyTopic 响应主题，{@code {cid}} 所在层级由 {@code idSegment} 指定
+     * @param idSegment  关联 ID 在响应主题中的层级
+     * @param qos        响应主题订阅的 qos
+     * @param pending    等待响应的调用
+     */
+    void enqueue(String replyTopic, int idSegment, int qos, Pending pending) {
+        register(pending);
+
+        ReplyChannel channel = channels.get(replyTopic);
+        if (channel == null) {
+            ReplyChannel created = new ReplyChannel(replyTopic, idSegment, qos);
+            channel = channels.putIfAbsent(replyTopic, created);
+            if (channel == null) {
+                channel = created;
+            }
+        }
+        channel.publish(pending);
+    }
+
+    /**
+     * 登记等待响应的调用及其截止时间
+     */
+    void register(Pending pending) {
+        pending.engine = this;
+        put(pending);
+        deadlineWheel.schedule(pending);
+    }
+
+    /**
+     * 取消等待，若调用尚未完成则以 {@code t} 结束
+     */
+    void cancel(long id, Throwable t) {
+        Pending pending = remove(id);
+        if (pending != null) {
+            pending.onFailure(t);
+        }
+    }
+
+    private void put(Pending pending) {
+        int home = (int) pending.id;
+        for (int probe = 0; probe < CAPACITY; probe++) {
+            int index = (home + probe) & (CAPACITY - 1);
+            Pending current = slots.get(index);
+            if ((current == null || current == TOMBSTONE) && slots.compareAndSet(index, current, pending)) {
+                int max;
+                while (probe > (max = maxProbe.get()) && !maxProbe.compareAndSet(max, probe)) {
+                    // 重试
+                }
+                return;
+            }
+        }
+        throw new IllegalStateException("Too many pending correlated calls: " + CAPACITY);
+    }
+
+    @Nullable
+    private Pending remove(long id) {
+        int home = (int) id;
+        for (int probe = 0, max = maxProbe.get(); probe <= max; probe++) {
+            int index = (home + probe) & (CAPACITY - 1);
+            Pending current = slots.get(index);
+            if (current != null && current.id == id) {
+                if (slots.compareAndSet(index, current, TOMBSTONE)) {
+                    deadlineWheel.cancel(current);
+                    return current;
+                }
+                // 已被响应、超时或取消抢先完成
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 截止时间到期，若调用尚未完成则以超时结束
+     */
+    private void expire(Pending pending) {
+        if (remove(pending.id) != null) {
+            pending.onFailure(MqttTimeoutException.INSTANCE);
+        }
+    }
+
+    /**
+     * 收到响应消息，从主题中取出关联 ID 并完成对应的调用
+     */
+    private void dispatch(int idSegment, org.sheedon.mqtt.Response rawResponse) {
+        org.sheedon.mqtt.ResponseBody body = rawResponse.getBody();
+        String topic = body != null ? body.getTopic() : null;
+        if (topic != null) {
+            reply(topic, idSegment, rawResponse);
+        }
+    }
+
+    /**
+     * 按响应主题中的关联 ID 完成对应的调用，返回 false 表示不是本进程的 ID 或调用已完成
+     */
+    boolean reply(String topic, int idSegment, org.sheedon.mqtt.Response rawResponse) {
+        long id = parseId(topic, idSegment);
+        if (id <= 0) {
+            return false;
+        }
+        Pending pending = remove(id);
+        if (pending == null) {
+            return false;
+        }
+        pending.onReply(rawResponse);
+        return true;
+    }
+
+    /**
+     * 在不拆分字符串的情况下取出第 {@code segment} 层的关联 ID，不是本进程生成的 ID 时返回 -1
+     */
+    private long parseId(String topic, int segment) {
+        int start = 0;
+        for (int i = 0; i < segment; i++) {
+            start = topic.indexOf('/', start) + 1;
+            if (start == 0) {
+                return -1;
+            }
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = topic.length();
+        }
+        int length = prefix.length();
+        if (end - start <= length || !topic.startsWith(prefix, start)) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = start + length; i < end; i++) {
+            int digit = Character.digit(topic.charAt(i), 36);
+            if (digit < 0) {
+                return -1;
+            }
+            id = id * 36 + digit;
+        }
+        return id;
+    }
+
+    /**
+     * 一个等待响应的调用
+     */
+    abstract static class Pending extends DeadlineWheel.Timeout {
+        final long id;
+        // 登记到等待表前写入
+        @Nullable
+        CorrelationEngine engine;
+
+        Pending(long id, long timeoutNanos) {
+            super(System.nanoTime() + timeoutNanos);
+            this.id = id;
+        }
+
+        @Override
+        final void expire() {
+            CorrelationEngine engine = this.engine;
+            if (engine != null) {
+                engine.expire(this);
+            }
+        }
+
+        /**
+         * 发送请求
+         */
+        abstract void publish();
+
+        /**
+         * 收到响应
+         */
+        abstract void onReply(org.sheedon.mqtt.Response rawResponse);
+
+        /**
+         * 超时、取消或订阅失败
+         */
+        abstract void onFailure(Throwable t);
+    }
+
+    /**
+     * 一个响应主题的共享订阅
+     */
+    private final class ReplyChannel implements FullCallback {
+        private final String replyTopic;
+        private final int idSegment;
+        private final int qos;
+
+        private volatile boolean ready;
+        @GuardedBy("this")
+        private boolean subscribing;
+        @GuardedBy("this")
+        private final List<Pending> waiting = new ArrayList<>();
+
+        ReplyChannel(String replyTopic, int idSegment, int qos) {
+            this.replyTopic = replyTopic;
+            this.idSegment = idSegment;
+            this.qos = qos;
+        }
+
+        void publish(Pending pending) {
+            if (!ready && enqueueWaiting(pending)) {
+                return;
+            }
+            pending.publish();
+        }
+
+        /**
+         * 订阅尚未确认时排队等待，返回 true 表示已排队
+         */
+        private boolean enqueueWaiting(Pending pending) {
+            boolean subscribe;
+            synchronized (this) {
+                if (ready) {
+                    return false;
+                }
+                waiting.add(pending);
+                subscribe = !subscribing;
+                subscribing = true;
+            }
+            if (subscribe) {
+                subscribe();
+            }
+            return true;
+        }
+
+        private void subscribe() {
+            try {
+                Subscribe subscribe = new Subscribe.Builder()
+                        .add(replyTopic, null, qos, true, SubscriptionType.REMOTE)
+                        .build();
+                clientRouter.observableFactory(replyTopic).newObservable(subscribe).enqueue(this);
+            } catch (RuntimeException e) {
+                onFailure(e);
+            }
+        }
+
+        @Override
+        public void onResponse(@Nullable MqttWireMessage response) {
+            List<Pending> queued;
+            synchronized (this) {
+                ready = true;
+                subscribing = false;
+                queued = new ArrayList<>(waiting);
+                waiting.clear();
+            }
+            for (Pending pending : queued) {
+                pending.publish();
+            }
+        }
+
+        @Override
+        public void onResponse(@NonNull org.sheedon.mqtt.Observable observable,
+                               @NonNull org.sheedon.mqtt.Response rawResponse) {
+            dispatch(idSegment, rawResponse);
+        }
+
+        @Override
+        public void onFailure(@Nullable Throwable e) {
+            List<Pending> failed;
+            synchronized (this) {
+                // 下一次调用重新订阅
+                ready = false;
+                subscribing = false;
+                failed = new ArrayList<>(waiting);
+                waiting.clear();
+            }
+            Throwable failure = e != null ? Utils.failure(e) : new IllegalStateException("Subscribe " + replyTopic + " failed.");
+            for (Pending pending : failed) {
+                cancel(pending.id, failure);
+            }
+        }
+    }
+}
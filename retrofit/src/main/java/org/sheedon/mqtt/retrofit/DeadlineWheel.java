@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.sheedon.mqtt.retrofit.Utils.throwIfFatal;
+
+/**
+ * 等待响应的调用的截止时间轮，同一 {@link Retrofit} 的所有调用共用。
+ * <p>
+ * 1. 时间轮共 {@link #WHEEL_SIZE} 格，每格 {@link #TICK_MILLIS} 毫秒，超出一圈的截止时间按剩余圈数记录在对应格中。
+ * 2. 登记、取消为 O(1)：调用线程只入队或 CAS 修改状态，格内链表只由 {@link Retrofit#scheduler()} 线程修改。
+ * 3. 每次推进时先收集所有到期的调用，再依次回调，到期精度为一格。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+final class DeadlineWheel {
+
+    private static final long TICK_MILLIS = 10;
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    // 2 的幂，一圈约 5 秒
+    static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final ScheduledExecutorService scheduler;
+    private final long startNanos;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> canceled = new ConcurrentLinkedQueue<>();
+
+    // 以下字段只由调度线程访问
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    private final List<Timeout> expired = new ArrayList<>();
+    private long tick;
+
+    DeadlineWheel(ScheduledExecutorService scheduler) {
+        this(scheduler, System.nanoTime());
+    }
+
+    /**
+     * @param startNanos 第 0 格的起始时间，以 {@link System#nanoTime()} 计
+     */
+    DeadlineWheel(ScheduledExecutorService scheduler, long startNanos) {
+        this.scheduler = scheduler;
+        this.startNanos = startNanos;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 登记截止时间，到期时在调度线程回调 {@link Timeout#expire()}
+     */
+    void schedule(Timeout timeout) {
+        added.offer(timeout);
+        if (!started.get() && started.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay(this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 取消截止时间，返回 false 表示已到期或已取消
+     */
+    boolean cancel(Timeout timeout) {
+        if (!timeout.state.compareAndSet(Timeout.PENDING, Timeout.CANCELED)) {
+            return false;
+        }
+        canceled.offer(timeout);
+        return true;
+    }
+
+    private void advance() {
+        advanceTo(System.nanoTime());
+    }
+
+    /**
+     * 推进到 {@code nowNanos}，回调期间到期的调用，只能在调度线程调用
+     */
+    void advanceTo(long nowNanos) {
+        long target = (nowNanos - startNanos) / TICK_NANOS;
+        removeCanceled();
+        addScheduled();
+        while (tick <= target) {
+            wheel[(int) (tick & MASK)].expire(expired);
+            tick++;
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (int i = 0, size = expired.size(); i < size; i++) {
+            try {
+                expired.get(i).expire();
+            } catch (Throwable t) {
+                // 单个回调出错不能中断时间轮
+                throwIfFatal(t);
+                t.printStackTrace();
+            }
+        }
+        expired.clear();
+    }
+
+    private void addScheduled() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            // 向上取整，避免提前到期
+            long deadlineTick = (timeout.deadlineNanos - startNanos + TICK_NANOS - 1) / TICK_NANOS;
+            if (deadlineTick < tick) {
+                deadlineTick = tick;
+            }
+            timeout.rounds = (deadlineTick - tick) / WHEEL_SIZE;
+            wheel[(int) (deadlineTick & MASK)].add(timeout);
+        }
+    }
+
+    private void removeCanceled() {
+        Timeout timeout;
+        while ((timeout = canceled.poll()) != null) {
+            Bucket bucket = timeout.bucket;
+            if (bucket != null) {
+                bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 一个截止时间，到期与取消只会发生其一
+     */
+    abstract static class Timeout {
+        static final int PENDING = 0;
+        static final int CANCELED = 1;
+        static final int EXPIRED = 2;
+
+        final long deadlineNanos;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // 以下字段只由调度线程访问
+        private @Nullable
+        Bucket bucket;
+        private @Nullable
+        Timeout prev, next;
+        private long rounds;
+
+        /**
+         * @param deadlineNanos 截止时间，以 {@link System#nanoTime()} 计
+         */
+        Timeout(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 截止时间到期
+         */
+        abstract void expire();
+    }
+
+    /**
+     * 时间轮的一格，双向链表
+     */
+    private static final class Bucket {
+        private @Nullable
+        Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * 收集本圈到期的截止时间，其余的剩余圈数减一
+         */
+        void expire(List<Timeout> expired) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    remove(timeout);
+                    if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                        expired.add(timeout);
+                    }
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout prev = timeout.prev;
+            Timeout next = timeout.next;
+            if (prev != null) {
+                prev.next = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.prev = prev;
+            } else {
+                tail = prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
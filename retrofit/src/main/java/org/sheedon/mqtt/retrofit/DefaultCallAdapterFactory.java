@@ -34,8 +34,8 @@ import androidx.annotation.Nullable;
 
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe;
 import org.sheedon.mqtt.Request;
+import org.sheedon.mqtt.retrofit.mqtt.Buffer;
 
-import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -83,6 +83,27 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
                         ? null
                         : callbackExecutor;
 
+        Buffer found = null;
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Buffer) {
+                found = (Buffer) annotation;
+            }
+        }
+        final Buffer buffer = found;
+        if (buffer != null) {
+            if (rawType != Observable.class) {
+                throw new IllegalArgumentException("@Buffer can only be used with Observable.");
+            }
+            if (buffer.capacity() <= 0) {
+                throw new IllegalArgumentException("@Buffer capacity must be positive: " + buffer.capacity());
+            }
+            if (executor == null) {
+                // 没有回调线程时消息在接收线程直接回调，缓冲区不起作用
+                throw new IllegalArgumentException(
+                        "@Buffer requires a callback executor and cannot be used with @SkipCallbackExecutor.");
+            }
+        }
+
         return new CallAdapter<Object, Object>() {
             @Override
             public Type rawType() {
@@ -102,11 +123,24 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
             @Override
             public Observable<Object> adapt(Observable<Object> observable) {
                 return executor == null ? observable :
-                        new ExecutorCallbackObservable<>(callbackExecutor, observable);
+                        new ExecutorCallbackObservable<>(executor, observable, buffer);
             }
         };
     }
 
+    /**
+     * 获取由 {@link OkMqttCall}、{@link OkMqttObservable} 持有的事件监听器
+     */
+    static EventListener eventListenerOf(Object delegate) {
+        if (delegate instanceof OkMqttCall) {
+            return ((OkMqttCall<?>) delegate).eventListener();
+        }
+        if (delegate instanceof OkMqttObservable) {
+            return ((OkMqttObservable<?>) delegate).getEventListener();
+        }
+        return EventListener.NONE;
+    }
+
     /**
      * 默认的Call的反馈调度实现类。
      * 代理执行okMqtt-Request publish/enqueue
@@ -114,10 +148,12 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
     static final class ExecutorCallbackCall<T> implements Call<T> {
         final Executor callbackExecutor;
         final Call<T> delegate;
+        final EventListener eventListener;
 
         ExecutorCallbackCall(Executor callbackExecutor, Call<T> delegate) {
             this.callbackExecutor = callbackExecutor;
             this.delegate = delegate;
+            this.eventListener = eventListenerOf(delegate);
         }
 
         /**
@@ -172,22 +208,34 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
             }
 
             delegate.enqueue(
-                    new Callback<T>() {
+                    new OkMqttCall.DispatchingCallback<T>() {
                         @Override
                         public void onResponse(Call<T> call, final Response<T> response) {
                             callbackExecutor.execute(() -> {
-                                if (delegate.isCanceled()) {
-                                    // Emulate OkMqtt's behavior of throwing/delivering an IOException on cancellation.
-                                    callback.onFailure(ExecutorCallbackCall.this, new IOException("Canceled"));
-                                } else {
-                                    callback.onResponse(ExecutorCallbackCall.this, response);
+                                eventListener.callbackDispatched();
+                                try {
+                                    if (delegate.isCanceled()) {
+                                        // Deliver a stackless cancellation failure.
+                                        callback.onFailure(ExecutorCallbackCall.this, MqttCanceledException.INSTANCE);
+                                    } else {
+                                        callback.onResponse(ExecutorCallbackCall.this, response);
+                                    }
+                                } finally {
+                                    eventListener.callEnd();
                                 }
                             });
                         }
 
                         @Override
                         public void onFailure(Call<T> call, final Throwable t) {
-                            callbackExecutor.execute(() -> callback.onFailure(ExecutorCallbackCall.this, t));
+                            callbackExecutor.execute(() -> {
+                                eventListener.callbackDispatched();
+                                try {
+                                    callback.onFailure(ExecutorCallbackCall.this, t);
+                                } finally {
+                                    eventListener.callFailed(t);
+                                }
+                            });
                         }
                     });
         }
@@ -200,10 +248,26 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
     static final class ExecutorCallbackObservable<T> implements Observable<T> {
         final Executor callbackExecutor;
         final Observable<T> delegate;
+        final EventListener eventListener;
+        // 配置 @Buffer 时的消息缓冲区
+        final @Nullable
+        BoundedBuffer<Response<T>> buffer;
 
-        ExecutorCallbackObservable(Executor callbackExecutor, Observable<T> delegate) {
+        ExecutorCallbackObservable(Executor callbackExecutor, Observable<T> delegate,
+                                   @Nullable Buffer buffer) {
             this.callbackExecutor = callbackExecutor;
             this.delegate = delegate;
+            this.eventListener = eventListenerOf(delegate);
+            this.buffer = buffer == null ? null
+                    : new BoundedBuffer<>(callbackExecutor, buffer.capacity(), buffer.overflow());
+        }
+
+        /**
+         * 缓冲区状态，未配置 {@link Buffer @Buffer} 时返回 null
+         */
+        @Nullable
+        BufferStats bufferStats() {
+            return buffer == null ? null : new BufferStats(buffer);
         }
 
         /**
@@ -221,6 +285,9 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
         @Override
         public void cancel() {
             delegate.cancel();
+            if (buffer != null) {
+                buffer.close();
+            }
         }
 
         /**
@@ -263,23 +330,22 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
         @Override
         public void enqueue(final Consumer<T> consumer) {
             Objects.requireNonNull(consumer, "consumer == null");
+            if (buffer != null) {
+                buffer.start(newSink(consumer));
+            }
 
             delegate.enqueue(new Consumer<T>() {
                 @Override
                 public void onResponse(@NonNull Observable<T> observable, @Nullable Response<T> response) {
-                    callbackExecutor.execute(() -> {
-                        if (delegate.isCanceled()) {
-                            // Emulate OkMqtt's behavior of throwing/delivering an IOException on cancellation.
-                            consumer.onFailure(ExecutorCallbackObservable.this, new IOException("Canceled"));
-                        } else {
-                            consumer.onResponse(ExecutorCallbackObservable.this, response);
-                        }
-                    });
+                    dispatchResponse(consumer, response);
                 }
 
                 @Override
                 public void onFailure(@NonNull Observable<T> observable, @Nullable Throwable t) {
-                    callbackExecutor.execute(() -> consumer.onFailure(ExecutorCallbackObservable.this, t));
+                    callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
+                        consumer.onFailure(ExecutorCallbackObservable.this, t);
+                    });
                 }
             });
         }
@@ -295,9 +361,10 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
                 @Override
                 public void onResponse(@NonNull Observable<T> observable, @Nullable MqttSubscribe response) {
                     callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
                         if (delegate.isCanceled()) {
-                            // Emulate OkMqtt's behavior of throwing/delivering an IOException on cancellation.
-                            subscribe.onFailure(ExecutorCallbackObservable.this, new IOException("Canceled"));
+                            // Deliver a stackless cancellation failure.
+                            subscribe.onFailure(ExecutorCallbackObservable.this, MqttCanceledException.INSTANCE);
                         } else {
                             subscribe.onResponse(ExecutorCallbackObservable.this, response);
                         }
@@ -306,7 +373,10 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
 
                 @Override
                 public void onFailure(@NonNull Observable<T> observable, @Nullable Throwable t) {
-                    callbackExecutor.execute(() -> subscribe.onFailure(ExecutorCallbackObservable.this, t));
+                    callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
+                        subscribe.onFailure(ExecutorCallbackObservable.this, t);
+                    });
                 }
             });
         }
@@ -318,26 +388,23 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
         @Override
         public void enqueue(@NonNull FullConsumer<T> consumer) {
             Objects.requireNonNull(consumer, "consumer == null");
+            if (buffer != null) {
+                buffer.start(newSink(consumer));
+            }
 
             delegate.enqueue(new FullConsumer<T>() {
                 @Override
                 public void onResponse(@NonNull Observable<T> observable, @Nullable Response<T> response) {
-                    callbackExecutor.execute(() -> {
-                        if (delegate.isCanceled()) {
-                            // Emulate OkMqtt's behavior of throwing/delivering an IOException on cancellation.
-                            consumer.onFailure(ExecutorCallbackObservable.this, new IOException("Canceled"));
-                        } else {
-                            consumer.onResponse(ExecutorCallbackObservable.this, response);
-                        }
-                    });
+                    dispatchResponse(consumer, response);
                 }
 
                 @Override
                 public void onResponse(@NonNull Observable<T> observable, @Nullable MqttSubscribe response) {
                     callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
                         if (delegate.isCanceled()) {
-                            // Emulate OkMqtt's behavior of throwing/delivering an IOException on cancellation.
-                            consumer.onFailure(ExecutorCallbackObservable.this, new IOException("Canceled"));
+                            // Deliver a stackless cancellation failure.
+                            consumer.onFailure(ExecutorCallbackObservable.this, MqttCanceledException.INSTANCE);
                         } else {
                             consumer.onResponse(ExecutorCallbackObservable.this, response);
                         }
@@ -346,7 +413,10 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
 
                 @Override
                 public void onFailure(@NonNull Observable<T> observable, @Nullable Throwable t) {
-                    callbackExecutor.execute(() -> consumer.onFailure(ExecutorCallbackObservable.this, t));
+                    callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
+                        consumer.onFailure(ExecutorCallbackObservable.this, t);
+                    });
                 }
             });
         }
@@ -357,6 +427,9 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
          */
         @Override
         public void unsubscribe(Subscribe<T> callback) {
+            if (buffer != null) {
+                buffer.close();
+            }
             delegate.unsubscribe(callback == null ? null : new Subscribe<T>() {
                 @Override
                 public void onResponse(@NonNull Observable<T> observable, @Nullable MqttSubscribe response) {
@@ -365,9 +438,10 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
                     }
 
                     callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
                         if (delegate.isCanceled()) {
-                            // Emulate OkMqtt's behavior of throwing/delivering an IOException on cancellation.
-                            callback.onFailure(ExecutorCallbackObservable.this, new IOException("Canceled"));
+                            // Deliver a stackless cancellation failure.
+                            callback.onFailure(ExecutorCallbackObservable.this, MqttCanceledException.INSTANCE);
                         } else {
                             callback.onResponse(ExecutorCallbackObservable.this, response);
                         }
@@ -380,9 +454,56 @@ final class DefaultCallAdapterFactory extends CallAdapter.Factory {
                         return;
                     }
 
-                    callbackExecutor.execute(() -> callback.onFailure(ExecutorCallbackObservable.this, t));
+                    callbackExecutor.execute(() -> {
+                        eventListener.callbackDispatched();
+                        callback.onFailure(ExecutorCallbackObservable.this, t);
+                    });
                 }
             });
         }
+
+        /**
+         * 将消息提交到回调线程，配置 {@link Buffer @Buffer} 时先写入缓冲区
+         */
+        private void dispatchResponse(Consumer<T> consumer, @Nullable Response<T> response) {
+            if (buffer == null || response == null) {
+                callbackExecutor.execute(() -> deliverResponse(consumer, response));
+                return;
+            }
+            buffer.offer(response);
+        }
+
+        /**
+         * 缓冲区的分发目标，溢出在回调线程中合并反馈
+         */
+        private BoundedBuffer.Sink<Response<T>> newSink(Consumer<T> consumer) {
+            return new BoundedBuffer.Sink<Response<T>>() {
+                @Override
+                public void deliver(Response<T> response) {
+                    deliverResponse(consumer, response);
+                }
+
+                @Override
+                public void overflow(int dropped) {
+                    eventListener.callbackDispatched();
+                    consumer.onFailure(ExecutorCallbackObservable.this, new IllegalStateException(
+                            "Observable buffer overflow, capacity " + buffer.capacity()
+                                    + ", dropped " + dropped));
+                }
+            };
+        }
+
+        /**
+         * 在回调线程中分发消息
+         */
+        private void deliverResponse(Consumer<T> consumer, @Nullable Response<T> response) {
+            eventListener.callbackDispatched();
+            if (delegate.isCanceled()) {
+                // Deliver a stackless cancellation failure.
+                consumer.onFailure(ExecutorCallbackObservable.this, MqttCanceledException.INSTANCE);
+            } else {
+                consumer.onResponse(ExecutorCallbackObservable.this, response);
+            }
+        }
     }
 }
\ No newline at end of file
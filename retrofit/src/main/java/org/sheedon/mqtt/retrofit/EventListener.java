@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Method;
+
+/**
+ * 监听 {@link Call} / {@link Observable} 生命周期中各阶段的事件，用于统计耗时、链路追踪等。
+ * <p>
+ * 每个 Call/Observable 都会通过 {@link Factory} 创建自己的监听器实例，因此实现类可以在字段中保存状态，
+ * 例如在 {@link #publishStart()} 中记录 {@link System#nanoTime()}，并在 {@link #responseReceived(String)}
+ * 中计算往返耗时。所有回调都在触发事件的线程上同步执行，实现类应尽量轻量且不得抛出异常。
+ * <p>
+ * 一次请求响应调用的事件顺序为：
+ * <pre>
+ * callStart
+ *   requestBuildStart → [bodyConvertStart → bodyConvertEnd] → requestBuildEnd
+ *   publishStart
+ *   responseReceived → responseConvertStart → responseConvertEnd
+ *   [callbackDispatched]
+ * callEnd / callFailed
+ * </pre>
+ * 使用回调执行器时，callEnd / callFailed 在回调执行器上、使用者回调执行后触发。
+ * callEnd 与 callFailed 只触发其中一个，且只触发一次。
+ * 对于订阅，{@link #subscribeAck()} 在订阅成功后触发，而响应相关事件会随每条消息重复触发，
+ * {@link #callEnd()} 在取消订阅或取消时触发。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 10:12
+ */
+public abstract class EventListener {
+
+    public static final EventListener NONE = new EventListener() {
+    };
+
+    /**
+     * 创建一个总是返回 {@code listener} 的工厂，适用于无状态的监听器。
+     */
+    public static Factory factory(EventListener listener) {
+        return method -> listener;
+    }
+
+    /**
+     * 服务方法首次被解析时调用，只触发一次。
+     *
+     * @param method    服务方法
+     * @param tookNanos 解析注解、查找转换器和适配器所耗费的时间，单位纳秒
+     */
+    public void serviceMethodParsed(Method method, long tookNanos) {
+    }
+
+    /**
+     * Call/Observable 开始执行（入队、发布或订阅）时调用。
+     */
+    public void callStart() {
+    }
+
+    /**
+     * 开始根据方法参数构建请求/订阅对象时调用。
+     */
+    public void requestBuildStart() {
+    }
+
+    /**
+     * 请求/订阅对象构建完成时调用。
+     *
+     * @param topic 本次发送消息的主题，若只订阅则为订阅主题，可能为空
+     */
+    public void requestBuildEnd(@Nullable String topic) {
+    }
+
+    /**
+     * 开始通过 {@link Converter} 转换 {@link org.sheedon.mqtt.retrofit.mqtt.Body @Body} 参数时调用。
+     */
+    public void bodyConvertStart() {
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Body @Body} 参数转换完成时调用。
+     *
+     * @param bodyLength 转换得到的有效载荷长度
+     */
+    public void bodyConvertEnd(int bodyLength) {
+    }
+
+    /**
+     * 将请求交给 OkMqtt 发送或订阅之前调用。
+     */
+    public void publishStart() {
+    }
+
+    /**
+     * 收到 mqtt-server 的订阅确认时调用。
+     */
+    public void subscribeAck() {
+    }
+
+    /**
+     * 收到原始响应消息时调用，订阅时每条消息都会触发一次。
+     *
+     * @param topic 响应消息的主题
+     */
+    public void responseReceived(@Nullable String topic) {
+    }
+
+    /**
+     * 开始通过 {@link Converter} 转换响应消息时调用。
+     */
+    public void responseConvertStart() {
+    }
+
+    /**
+     * 响应消息转换完成时调用。
+     */
+    public void responseConvertEnd() {
+    }
+
+    /**
+     * 回调已切换到 {@linkplain Retrofit#callbackExecutor() 回调执行器}，即将执行使用者的回调时调用。
+     * 若方法使用了 {@link SkipCallbackExecutor}，则不会触发。
+     */
+    public void callbackDispatched() {
+    }
+
+    /**
+     * 调用正常结束时调用。对于订阅，在取消订阅或取消时调用。
+     */
+    public void callEnd() {
+    }
+
+    /**
+     * 调用失败时调用。
+     *
+     * @param t 错误
+     */
+    public void callFailed(@Nullable Throwable t) {
+    }
+
+    /**
+     * 为每个 Call/Observable 创建一个 {@link EventListener}，同一个服务方法的多次调用会得到不同的实例。
+     */
+    public interface Factory {
+        /**
+         * 为 {@code method} 的一次调用创建监听器。
+         */
+        EventListener create(Method method);
+    }
+}
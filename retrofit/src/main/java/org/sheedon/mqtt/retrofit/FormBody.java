@@ -29,12 +29,14 @@
  */
 package org.sheedon.mqtt.retrofit;
 
-import java.util.ArrayList;
-import java.util.List;
+import androidx.annotation.Nullable;
 
 /**
  * 参数内容主体
  * 基础参数，格式：name=value&name1=value1
+ * <p>
+ * 每个字段添加时直接写入缓冲区，不再先收集到列表中；缓冲区初始容量取同一方法上一次输出的长度，
+ * 通常只需分配一次。
  *
  * @Author: sheedon
  * @Email: sheedonsun@163.com
@@ -42,56 +44,76 @@ import java.util.List;
  */
 final class FormBody {
 
-    private final List<String> encodedNames;
-    private final List<String> encodedValues;
-
-    private FormBody(List<String> encodedNames, List<String> encodedValues) {
-        this.encodedNames = Utils.immutableList(encodedNames);
-        this.encodedValues = Utils.immutableList(encodedValues);
+    private FormBody() {
     }
 
-    private String convertToString() {
-        StringBuilder builder = new StringBuilder();
+    public static final class Builder implements FormBodyConverter {
+        private final SizeHint sizeHint;
+        private @Nullable
+        StringBuilder buffer;
 
-        int size = encodedNames.size();
-        for (int index = 0; index < size; index++) {
-            String name = encodedNames.get(index);
-            String values = encodedValues.get(index);
-            builder.append(convert(name, values));
-            builder.append("&");
+        public Builder() {
+            this(new SizeHint());
         }
 
-        if (builder.length() > 1) {
-            builder.deleteCharAt(builder.length() - 1);
+        private Builder(SizeHint sizeHint) {
+            this.sizeHint = sizeHint;
         }
 
-        return builder.toString();
-    }
-
-    private String convert(String name, String values) {
-        return name + "=" + values;
-    }
-
-
-    public static final class Builder implements FormBodyConverter {
-        private final List<String> names = new ArrayList<>();
-        private final List<String> values = new ArrayList<>();
-
         public void add(String name, String value) {
             if (name == null) throw new NullPointerException("name == null");
             if (value == null) throw new NullPointerException("value == null");
 
-            names.add(name);
-            values.add(value);
+            StringBuilder buffer = this.buffer;
+            if (buffer == null) {
+                buffer = this.buffer = new StringBuilder(sizeHint.capacity());
+            } else {
+                buffer.append('&');
+            }
+            buffer.append(name).append('=').append(value);
         }
 
         public String build() {
-            return new FormBody(names, values).convertToString();
+            StringBuilder buffer = this.buffer;
+            if (buffer == null) {
+                return "";
+            }
+            String body = buffer.toString();
+            sizeHint.update(body.length());
+            return body;
+        }
+
+        /**
+         * 新构建者与模板共用输出长度记录
+         */
+        @Override
+        public FormBodyConverter newBuilder() {
+            return new Builder(sizeHint);
         }
 
         @Override
         public FormBodyConverter clone() {
-            return new Builder();
+            return newBuilder();
+        }
+    }
+
+    /**
+     * 上一次输出的长度，作为下一次缓冲区的初始容量
+     */
+    private static final class SizeHint {
+        // 首次使用时的初始容量
+        private static final int DEFAULT_CAPACITY = 64;
+        // 为长度波动预留的余量
+        private static final int SLACK = 16;
+
+        private volatile int capacity = DEFAULT_CAPACITY;
+
+        int capacity() {
+            return capacity;
+        }
+
+        void update(int length) {
+            capacity = length + SLACK;
         }
     }
 }
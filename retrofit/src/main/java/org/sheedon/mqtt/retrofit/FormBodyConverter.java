@@ -15,6 +15,8 @@
  * */
 package org.sheedon.mqtt.retrofit;
 
+import java.lang.reflect.Type;
+
 /**
  * 表单数据转化者，将表单数据转成String类型的数据
  *
@@ -34,6 +36,44 @@ public interface FormBodyConverter {
      */
     String build();
 
+    /**
+     * 元素类型为 {@code elementType} 的 {@link Iterable}、数组类型字段是否逐个元素添加。
+     * 返回 false 时整个字段按其自身类型转换为一个值，通过 {@link #add(String, String)} 添加，
+     * 例如元素转换后的字符串不能直接作为数组元素写入时。在解析服务方法时调用。
+     */
+    default boolean expandArray(Type elementType) {
+        return true;
+    }
+
+    /**
+     * 开始添加由 {@link Iterable}、数组类型的 {@link org.sheedon.mqtt.retrofit.mqtt.Field @Field} 展开的字段，
+     * 其后依次调用 {@link #addArrayValue(String, String)}、{@link #endArray(String)}
+     */
+    default void beginArray(String name) {
+    }
+
+    /**
+     * 添加数组字段的一个元素，默认以同名字段重复添加
+     */
+    default void addArrayValue(String name, String value) {
+        add(name, value);
+    }
+
+    /**
+     * 数组字段添加完毕
+     */
+    default void endArray(String name) {
+    }
+
+    /**
+     * 以本实例为模板，创建一次请求使用的空构建者。
+     * <p>
+     * 模板在创建请求工厂时生成一次，此后不再写入；新构建者只与模板共用只读配置（例如输出长度记录），
+     * 不复制已添加的字段，每次请求只分配构建者本身。默认调用 {@link #clone()}。
+     */
+    default FormBodyConverter newBuilder() {
+        return clone();
+    }
 
     /**
      * 克隆出一个自己
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+
+/**
+ * {@link org.sheedon.mqtt.retrofit.mqtt.AdaptiveTimeout @AdaptiveTimeout} 方法的响应延迟估算，
+ * 由同一方法的所有调用共用。
+ * <p>
+ * 1. 按 RFC 6298 的方式维护平滑延迟 {@code srtt} 和平均偏差 {@code rttvar}，
+ * 超时时间取 {@code srtt + 4 * rttvar}，并限制在 [min, max] 内。
+ * 2. 发生超时时将当前超时时间加倍（不超过 max），直到下一次收到响应重新计算。
+ * 同一个超时时间下发出的多个调用同时超时只加倍一次，使用更早超时时间的调用超时不再加倍。
+ * 3. 收到第一次响应前使用方法配置的超时时间。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+final class LatencyEstimator {
+
+    // 延迟波动极小时，超时时间至少比平滑延迟多出的余量
+    private static final long MIN_DEVIATION_NANOS = 10_000_000L; // 10ms
+
+    private final long minNanos;
+    private final long maxNanos;
+
+    @GuardedBy("this")
+    private long srttNanos = -1;
+    @GuardedBy("this")
+    private long rttvarNanos;
+
+    private volatile long timeoutNanos;
+
+    /**
+     * @param initialNanos 收到响应前使用的超时时间
+     * @param minNanos     超时时间下限
+     * @param maxNanos     超时时间上限
+     */
+    LatencyEstimator(long initialNanos, long minNanos, long maxNanos) {
+        this.minNanos = minNanos;
+        this.maxNanos = maxNanos;
+        this.timeoutNanos = clamp(initialNanos);
+    }
+
+    /**
+     * 当前的超时时间，单位纳秒
+     */
+    long timeoutNanos() {
+        return timeoutNanos;
+    }
+
+    /**
+     * 记录一次从发送到收到响应的延迟
+     *
+     * @param latencyNanos 响应延迟，单位纳秒
+     */
+    synchronized void onResponse(long latencyNanos) {
+        if (latencyNanos < 0) {
+            return;
+        }
+        if (srttNanos < 0) {
+            srttNanos = latencyNanos;
+            rttvarNanos = latencyNanos / 2;
+        } else {
+            long deviation = Math.abs(srttNanos - latencyNanos);
+            rttvarNanos += (deviation - rttvarNanos) / 4;
+            srttNanos += (latencyNanos - srttNanos) / 8;
+        }
+        timeoutNanos = clamp(srttNanos + Math.max(MIN_DEVIATION_NANOS, 4 * rttvarNanos));
+    }
+
+    /**
+     * 记录一次响应超时，超时调用使用的是当前超时时间时加倍
+     *
+     * @param usedNanos 超时调用使用的超时时间，单位纳秒
+     */
+    synchronized void onTimeout(long usedNanos) {
+        long current = timeoutNanos;
+        if (usedNanos != current) {
+            return;
+        }
+        timeoutNanos = current > maxNanos / 2 ? maxNanos : clamp(current * 2);
+    }
+
+    private long clamp(long nanos) {
+        return Math.min(maxNanos, Math.max(minNanos, nanos));
+    }
+}
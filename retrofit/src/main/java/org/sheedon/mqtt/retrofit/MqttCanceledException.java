@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+/**
+ * 调用已取消。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+public final class MqttCanceledException extends MqttException {
+
+    /**
+     * 共享实例，不记录调用栈且不可修改，没有其他原因的取消均使用此实例
+     */
+    static final MqttCanceledException INSTANCE = new MqttCanceledException("Canceled", true);
+
+    public MqttCanceledException() {
+        this("Canceled");
+    }
+
+    public MqttCanceledException(String message) {
+        super(message);
+    }
+
+    private MqttCanceledException(String message, boolean immutable) {
+        super(message, immutable);
+    }
+
+    /**
+     * 失败原因只与类型有关，不记录调用栈，避免大量调用同时失败时的开销
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -21,6 +21,9 @@ import java.util.Objects;
 
 /**
  * Exception for an unexpected, MQTT response.
+ * <p>
+ * 超时、取消、连接断开等没有响应的失败由子类 {@link MqttTimeoutException}、{@link MqttCanceledException}、
+ * {@link MqttDisconnectedException} 表示，此时 {@link #topic()}、{@link #response()} 均为 null。
  *
  * @Author: sheedon
  * @Email: sheedonsun@163.com
@@ -32,24 +35,69 @@ public class MqttException extends RuntimeException {
         return "MQTT " + response.topic() + " " + response.errorBody();
     }
 
-    private final String topic;
-    private final transient Response<?> response;
+    private final @Nullable
+    String topic;
+    private final transient @Nullable
+    Response<?> response;
+    // 各子类的共享实例，不可修改
+    private final transient boolean immutable;
 
     public MqttException(Response<?> response) {
         super(getMessage(response));
         this.topic = response.topic();
         this.response = response;
+        this.immutable = false;
     }
 
     /**
-     * MQTT status topic.
+     * 没有响应的失败
      */
-    public String topic() {
+    protected MqttException(String message) {
+        super(message);
+        this.topic = null;
+        this.response = null;
+        this.immutable = false;
+    }
+
+    /**
+     * 没有响应、没有原因的失败，用于子类的共享实例。
+     * <p>
+     * cause 固定为 null，{@link #initCause(Throwable)} 抛出异常，{@link #setStackTrace(StackTraceElement[])} 不生效。
+     * {@link #addSuppressed(Throwable)} 为 final 方法，禁止添加的构造方法需要 API 24，无法阻止，
+     * 不应对回调收到的失败调用。
+     */
+    MqttException(String message, boolean immutable) {
+        super(message, null);
+        this.topic = null;
+        this.response = null;
+        this.immutable = immutable;
+    }
+
+    @Override
+    public synchronized Throwable initCause(@Nullable Throwable cause) {
+        if (immutable) {
+            throw new IllegalStateException("Can't modify a shared " + getClass().getSimpleName());
+        }
+        return super.initCause(cause);
+    }
+
+    @Override
+    public void setStackTrace(StackTraceElement[] stackTrace) {
+        if (!immutable) {
+            super.setStackTrace(stackTrace);
+        }
+    }
+
+    /**
+     * MQTT status topic. This is null if the failure has no response.
+     */
+    public @Nullable
+    String topic() {
         return topic;
     }
 
     /**
-     * The full MQTT response. This may be null if the exception was serialized.
+     * The full MQTT response. This may be null if the exception was serialized or the failure has no response.
      */
     public @Nullable
     Response<?> response() {
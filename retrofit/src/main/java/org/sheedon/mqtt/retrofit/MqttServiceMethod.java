@@ -18,11 +18,15 @@ package org.sheedon.mqtt.retrofit;
 import androidx.annotation.Nullable;
 
 import org.sheedon.mqtt.ResponseBody;
+import org.sheedon.mqtt.retrofit.mqtt.Batch;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 import kotlin.coroutines.Continuation;
 
@@ -83,34 +87,57 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
             throw Utils.methodError(method, "Response must include generic type (e.g., Response<String>)");
         }
 
+        ClientRouter clientRouter = retrofit.clientRouter;
+        EventListener.Factory eventListenerFactory = retrofit.eventListenerFactory;
+
+        Batch batch = method.getAnnotation(Batch.class);
+        if (batch != null) {
+            if (isKotlinSuspendFunction || callAdapter.rawType() != Observable.class
+                    || Utils.getRawType(responseType) != List.class
+                    || !(responseType instanceof ParameterizedType)) {
+                throw Utils.methodError(method, "@Batch method must return Observable<List<T>>.");
+            }
+            if (batch.maxSize() <= 0 || batch.maxDelayMs() <= 0) {
+                throw Utils.methodError(method, "@Batch maxSize and maxDelayMs must be positive.");
+            }
+            Type elementType = Utils.getParameterUpperBound(0, (ParameterizedType) responseType);
+            //noinspection unchecked ResponseT is List<E>.
+            return (MqttServiceMethod<ResponseT, ReturnT>) new BatchObservableAdapted<>(requestFactory,
+                    createResponseConverter(retrofit, method, elementType), clientRouter,
+                    eventListenerFactory, (CallAdapter<List<Object>, ReturnT>) callAdapter,
+                    batch, retrofit.scheduler(), retrofit.batchExecutor());
+        }
+
         Converter<ResponseBody, ResponseT> responseConverter =
                 createResponseConverter(retrofit, method, responseType);
 
-        org.sheedon.mqtt.CallFactory callFactory = retrofit.callFactory;
         if (!isKotlinSuspendFunction) {
 
             if (callAdapter.rawType() == Observable.class) {
 
                 return new ObservableAdapted<>(requestFactory, responseConverter,
-                        retrofit.observableFactory, callAdapter);
+                        clientRouter, eventListenerFactory, callAdapter);
             }
 
-            return new CallAdapted<>(requestFactory, callFactory, responseConverter, callAdapter);
+            return new CallAdapted<>(requestFactory, clientRouter, responseConverter,
+                    eventListenerFactory, callAdapter);
         } else if (continuationWantsResponse) {
             //noinspection unchecked Kotlin compiler guarantees ReturnT to be Object.
             return (MqttServiceMethod<ResponseT, ReturnT>)
                     new SuspendForResponse<>(
                             requestFactory,
-                            callFactory,
+                            clientRouter,
                             responseConverter,
+                            eventListenerFactory,
                             (CallAdapter<ResponseT, Call<ResponseT>>) callAdapter);
         } else {
             //noinspection unchecked Kotlin compiler guarantees ReturnT to be Object.
             return (MqttServiceMethod<ResponseT, ReturnT>)
                     new SuspendForBody<>(
                             requestFactory,
-                            callFactory,
+                            clientRouter,
                             responseConverter,
+                            eventListenerFactory,
                             (CallAdapter<ResponseT, Call<ResponseT>>) callAdapter,
                             continuationBodyNullable);
         }
@@ -157,47 +184,32 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
     }
 
     private final RequestFactory requestFactory;
-    private final org.sheedon.mqtt.CallFactory callFactory;
-    private final org.sheedon.mqtt.ObservableFactory observableFactory;
+    private final ClientRouter clientRouter;
     private final Converter<ResponseBody, ResponseT> responseConverter;
+    private final EventListener.Factory eventListenerFactory;
     private final boolean isObservable;
 
     /**
-     * 根据{@link RequestFactory}、{@link org.sheedon.mqtt.CallFactory}、
-     * {@link Converter<ResponseBody, ResponseT>} 构建mqtt服务方法类
-     *
-     * @param requestFactory    创建请求body的工厂
-     * @param callFactory       Call构建工厂
-     * @param responseConverter 响应转化器
-     */
-    MqttServiceMethod(
-            RequestFactory requestFactory,
-            org.sheedon.mqtt.CallFactory callFactory,
-            Converter<ResponseBody, ResponseT> responseConverter) {
-        this.requestFactory = requestFactory;
-        this.callFactory = callFactory;
-        this.observableFactory = null;
-        this.responseConverter = responseConverter;
-        this.isObservable = false;
-    }
-
-    /**
-     * 根据{@link RequestFactory}、{@link org.sheedon.mqtt.ObservableFactory}、
+     * 根据{@link RequestFactory}、{@link ClientRouter}、
      * {@link Converter<ResponseBody, ResponseT>} 构建mqtt服务方法类
      *
-     * @param requestFactory    创建请求body的工厂
-     * @param observableFactory Observable构建工厂
-     * @param responseConverter 响应转化器
+     * @param requestFactory       创建请求body的工厂
+     * @param clientRouter         按主题选择Call/Observable构建工厂的路由
+     * @param responseConverter    响应转化器
+     * @param eventListenerFactory 事件监听器工厂
+     * @param isObservable         是否构建Observable
      */
     MqttServiceMethod(
             RequestFactory requestFactory,
-            org.sheedon.mqtt.ObservableFactory observableFactory,
-            Converter<ResponseBody, ResponseT> responseConverter) {
+            ClientRouter clientRouter,
+            Converter<ResponseBody, ResponseT> responseConverter,
+            EventListener.Factory eventListenerFactory,
+            boolean isObservable) {
         this.requestFactory = requestFactory;
-        this.callFactory = null;
-        this.observableFactory = observableFactory;
+        this.clientRouter = clientRouter;
         this.responseConverter = responseConverter;
-        this.isObservable = true;
+        this.eventListenerFactory = eventListenerFactory;
+        this.isObservable = isObservable;
     }
 
     /**
@@ -208,14 +220,27 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
     @Override
     final @Nullable
     ReturnT invoke(Object[] args) {
+        EventListener eventListener = eventListenerFactory.create(requestFactory.method());
         if (isObservable) {
-            Observable<ResponseT> observable = new OkMqttObservable<>(requestFactory, args, observableFactory, responseConverter);
-            return adapt(observable, args);
+            return adapt(newObservable(args, eventListener), args);
         }
-        Call<ResponseT> call = new OkMqttCall<>(requestFactory, args, callFactory, responseConverter);
+        Call<ResponseT> call = new OkMqttCall<>(requestFactory, args, clientRouter,
+                responseConverter, eventListener);
         return adapt(call, args);
     }
 
+    @Override
+    final RequestFactory requestFactory() {
+        return requestFactory;
+    }
+
+    /**
+     * 构建订阅调用
+     */
+    Observable<ResponseT> newObservable(Object[] args, EventListener eventListener) {
+        return new OkMqttObservable<>(requestFactory, args, clientRouter, responseConverter, eventListener);
+    }
+
     /**
      * 通过Call/args 调度方法
      *
@@ -245,10 +270,11 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
 
         CallAdapted(
                 RequestFactory requestFactory,
-                org.sheedon.mqtt.CallFactory callFactory,
+                ClientRouter clientRouter,
                 Converter<ResponseBody, ResponseT> responseConverter,
+                EventListener.Factory eventListenerFactory,
                 CallAdapter<ResponseT, ReturnT> callAdapter) {
-            super(requestFactory, callFactory, responseConverter);
+            super(requestFactory, clientRouter, responseConverter, eventListenerFactory, false);
             this.callAdapter = callAdapter;
         }
 
@@ -266,9 +292,10 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
         ObservableAdapted(
                 RequestFactory requestFactory,
                 Converter<ResponseBody, ResponseT> responseConverter,
-                org.sheedon.mqtt.ObservableFactory observableFactory,
+                ClientRouter clientRouter,
+                EventListener.Factory eventListenerFactory,
                 CallAdapter<ResponseT, ReturnT> callAdapter) {
-            super(requestFactory, observableFactory, responseConverter);
+            super(requestFactory, clientRouter, responseConverter, eventListenerFactory, true);
             this.callAdapter = callAdapter;
         }
 
@@ -278,16 +305,63 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
         }
     }
 
+    // 批量回调的Observable的mqtt服务方法，消息按元素类型转换后由BatchingObservable合并
+    static final class BatchObservableAdapted<E, ReturnT> extends MqttServiceMethod<List<E>, ReturnT> {
+
+        private final RequestFactory requestFactory;
+        private final ClientRouter clientRouter;
+        private final Converter<ResponseBody, E> elementConverter;
+        private final CallAdapter<List<E>, ReturnT> callAdapter;
+        private final int maxSize;
+        private final long maxDelayMs;
+        private final ScheduledExecutorService scheduler;
+        private final Executor flushExecutor;
+
+        BatchObservableAdapted(
+                RequestFactory requestFactory,
+                Converter<ResponseBody, E> elementConverter,
+                ClientRouter clientRouter,
+                EventListener.Factory eventListenerFactory,
+                CallAdapter<List<E>, ReturnT> callAdapter,
+                Batch batch,
+                ScheduledExecutorService scheduler,
+                Executor flushExecutor) {
+            // 不使用整批的响应转换器
+            super(requestFactory, clientRouter, null, eventListenerFactory, true);
+            this.requestFactory = requestFactory;
+            this.clientRouter = clientRouter;
+            this.elementConverter = elementConverter;
+            this.callAdapter = callAdapter;
+            this.maxSize = batch.maxSize();
+            this.maxDelayMs = batch.maxDelayMs();
+            this.scheduler = scheduler;
+            this.flushExecutor = flushExecutor;
+        }
+
+        @Override
+        Observable<List<E>> newObservable(Object[] args, EventListener eventListener) {
+            Observable<E> observable = new OkMqttObservable<>(requestFactory, args, clientRouter,
+                    elementConverter, eventListener);
+            return new BatchingObservable<>(observable, maxSize, maxDelayMs, scheduler, flushExecutor);
+        }
+
+        @Override
+        protected ReturnT adapt(Observable<List<E>> call, Object[] args) {
+            return callAdapter.adapt(call);
+        }
+    }
+
     // 通过协程响应结果的mqtt服务方法
     static final class SuspendForResponse<ResponseT> extends MqttServiceMethod<ResponseT, Object> {
         private final CallAdapter<ResponseT, Call<ResponseT>> callAdapter;
 
         SuspendForResponse(
                 RequestFactory requestFactory,
-                org.sheedon.mqtt.CallFactory callFactory,
+                ClientRouter clientRouter,
                 Converter<ResponseBody, ResponseT> responseConverter,
+                EventListener.Factory eventListenerFactory,
                 CallAdapter<ResponseT, Call<ResponseT>> callAdapter) {
-            super(requestFactory, callFactory, responseConverter);
+            super(requestFactory, clientRouter, responseConverter, eventListenerFactory, false);
             this.callAdapter = callAdapter;
         }
 
@@ -315,11 +389,12 @@ abstract class MqttServiceMethod<ResponseT, ReturnT> extends ServiceMethod<Retur
 
         SuspendForBody(
                 RequestFactory requestFactory,
-                org.sheedon.mqtt.CallFactory callFactory,
+                ClientRouter clientRouter,
                 Converter<ResponseBody, ResponseT> responseConverter,
+                EventListener.Factory eventListenerFactory,
                 CallAdapter<ResponseT, Call<ResponseT>> callAdapter,
                 boolean isNullable) {
-            super(requestFactory, callFactory, responseConverter);
+            super(requestFactory, clientRouter, responseConverter, eventListenerFactory, false);
             this.callAdapter = callAdapter;
             this.isNullable = isNullable;
         }
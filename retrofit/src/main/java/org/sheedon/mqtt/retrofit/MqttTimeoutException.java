@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+/**
+ * 在超时时间内未收到响应。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+public final class MqttTimeoutException extends MqttException {
+
+    /**
+     * 共享实例，不记录调用栈且不可修改，本地等待超时、不需要保留原始失败的超时均使用此实例
+     */
+    static final MqttTimeoutException INSTANCE = new MqttTimeoutException("Timeout", true);
+
+    public MqttTimeoutException() {
+        this("Timeout");
+    }
+
+    public MqttTimeoutException(String message) {
+        super(message);
+    }
+
+    private MqttTimeoutException(String message, boolean immutable) {
+        super(message, immutable);
+    }
+
+    /**
+     * 失败原因只与类型有关，不记录调用栈，避免大量调用同时失败时的开销
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import org.sheedon.mqtt.ResponseBody;
+
+/**
+ * 将只包含一个数值的消息直接解析为 {@code double}、{@code long}，不经过装箱。
+ * <p>
+ * 常见的十进制数（有效数字不超过 15 位、小数位不超过 22 位、无指数）逐字符解析，不创建任何对象；
+ * 其余格式交给 {@link Double#parseDouble(String)}、{@link Long#parseLong(String)} 处理。
+ * 消息两端的空白字符会被忽略。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:58
+ */
+public final class NumericConverters {
+
+    /**
+     * 将消息解析为 {@code double}
+     */
+    public interface DoubleConverter {
+        double convert(ResponseBody value);
+    }
+
+    /**
+     * 将消息解析为 {@code long}
+     */
+    public interface LongConverter {
+        long convert(ResponseBody value);
+    }
+
+    public static final DoubleConverter DOUBLE = value -> parseDouble(value.getData());
+
+    public static final LongConverter LONG = value -> parseLong(value.getData());
+
+    // 可精确表示的 10 的幂
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private NumericConverters() {
+        throw new AssertionError("No instances.");
+    }
+
+    /**
+     * 解析 {@code double}
+     *
+     * @throws NumberFormatException 不是数值时
+     */
+    public static double parseDouble(String text) {
+        if (text == null) {
+            throw new NumberFormatException("null");
+        }
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int index = start;
+        boolean negative = false;
+        if (index < end && (text.charAt(index) == '-' || text.charAt(index) == '+')) {
+            negative = text.charAt(index) == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean any = false;
+        for (; index < end; index++) {
+            char c = text.charAt(index);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) {
+                    scale++;
+                }
+                if (digits > MAX_EXACT_DIGITS || scale >= POWERS_OF_TEN.length) {
+                    return Double.parseDouble(text);
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                // 指数、NaN、Infinity 等
+                return Double.parseDouble(text);
+            }
+        }
+        if (!any) {
+            throw new NumberFormatException("For input string: \"" + text + "\"");
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * 解析 {@code long}
+     *
+     * @throws NumberFormatException 不是整数或超出范围时
+     */
+    public static long parseLong(String text) {
+        if (text == null) {
+            throw new NumberFormatException("null");
+        }
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int index = start;
+        boolean negative = false;
+        if (index < end && (text.charAt(index) == '-' || text.charAt(index) == '+')) {
+            negative = text.charAt(index) == '-';
+            index++;
+        }
+        if (index == end) {
+            throw new NumberFormatException("For input string: \"" + text + "\"");
+        }
+
+        // 以负数累加，可以表示 Long.MIN_VALUE
+        long result = 0;
+        for (; index < end; index++) {
+            int digit = text.charAt(index) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                // 非法字符或溢出，由 Long.parseLong 给出错误信息
+                return Long.parseLong(text.substring(start, end));
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                return Long.parseLong(text.substring(start, end));
+            }
+            return -result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 数值订阅，适用于消息只包含一个数值（温度、转速等）的高频主题。
+ * <p>
+ * 服务方法返回 {@code NumericObservable} 时，消息由 {@link NumericConverters} 直接解析为
+ * {@code double} 或 {@code long}，不经过 {@link Converter}、{@link Response} 以及装箱，
+ * 并在接收线程中直接回调，不切换到回调线程，因此每条消息不产生额外的对象分配。
+ *
+ * <pre><code>
+ * &#64;SUBSCRIBE("device/{id}/temperature")
+ * NumericObservable temperature(&#64;Path(value = "id", type = PathType.SUBSCRIBE) String id);
+ *
+ * api.temperature("1").enqueue(new NumericObservable.DoubleConsumer() {
+ *     public void onValue(double value, String topic) { ... }
+ *     public void onFailure(Throwable t) { ... }
+ * });
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:58
+ */
+public interface NumericObservable {
+
+    /**
+     * 订阅并按 {@code double} 接收消息
+     */
+    void enqueue(DoubleConsumer consumer);
+
+    /**
+     * 订阅并按 {@code long} 接收消息
+     */
+    void enqueue(LongConsumer consumer);
+
+    /**
+     * 取消订阅
+     */
+    void unsubscribe();
+
+    /**
+     * 取消本次订阅，之后不再回调
+     */
+    void cancel();
+
+    boolean isCanceled();
+
+    /**
+     * 接收 {@code double} 消息
+     */
+    interface DoubleConsumer {
+
+        /**
+         * @param value 消息数值
+         * @param topic 消息主题
+         */
+        void onValue(double value, String topic);
+
+        /**
+         * 订阅失败或消息不是数值
+         */
+        void onFailure(@Nullable Throwable t);
+    }
+
+    /**
+     * 接收 {@code long} 消息
+     */
+    interface LongConsumer {
+
+        /**
+         * @param value 消息数值
+         * @param topic 消息主题
+         */
+        void onValue(long value, String topic);
+
+        /**
+         * 订阅失败或消息不是整数
+         */
+        void onFailure(@Nullable Throwable t);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+/**
+ * 返回 {@link NumericObservable} 的服务方法，不经过 {@link CallAdapter} 与响应转换器
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:58
+ */
+final class NumericServiceMethod extends ServiceMethod<NumericObservable> {
+
+    private final RequestFactory requestFactory;
+    private final ClientRouter clientRouter;
+    private final EventListener.Factory eventListenerFactory;
+
+    NumericServiceMethod(Retrofit retrofit, RequestFactory requestFactory) {
+        this.requestFactory = requestFactory;
+        this.clientRouter = retrofit.clientRouter;
+        this.eventListenerFactory = retrofit.eventListenerFactory;
+    }
+
+    @Override
+    NumericObservable invoke(Object[] args) {
+        EventListener eventListener = eventListenerFactory.create(requestFactory.method());
+        return new OkMqttNumericObservable(requestFactory, args, clientRouter, eventListener);
+    }
+
+    @Override
+    RequestFactory requestFactory() {
+        return requestFactory;
+    }
+}
@@ -43,7 +43,7 @@ import static org.sheedon.mqtt.retrofit.Utils.throwIfFatal;
 /**
  * Call在OkMqtt中的实现类，用于代理创建请求调度。
  * <p>
- * 通过{@link callFactory} 将请求数据存储工厂{@link requestFactory}配置对应请求参数{@link args}，以获取真实Call，
+ * 通过{@link clientRouter} 选择的CallFactory，将请求数据存储工厂{@link requestFactory}配置对应请求参数{@link args}，以获取真实Call，
  * 对于Call代理执行无响应请求{@link #publish()}或者「订阅响应的请求」{@link #enqueue(Callback)}。
  *
  * @Author: sheedon
@@ -53,8 +53,9 @@ import static org.sheedon.mqtt.retrofit.Utils.throwIfFatal;
 final class OkMqttCall<T> implements Call<T> {
     private final RequestFactory requestFactory;
     private final Object[] args;
-    private final org.sheedon.mqtt.CallFactory callFactory;
+    private final ClientRouter clientRouter;
     private final Converter<ResponseBody, T> responseConverter;
+    private final EventListener eventListener;
 
     private volatile boolean canceled;
 
@@ -66,15 +67,29 @@ final class OkMqttCall<T> implements Call<T> {
     Throwable creationFailure;
     @GuardedBy("this")
     private boolean executed;
+    @GuardedBy("this")
+    private @Nullable
+    RequestBuilder requestBuilder;
+    @GuardedBy("this")
+    private long correlationId;
 
     OkMqttCall(RequestFactory requestFactory,
                @Nullable Object[] args,
-               org.sheedon.mqtt.CallFactory callFactory,
-               Converter<ResponseBody, T> responseConverter) {
+               ClientRouter clientRouter,
+               Converter<ResponseBody, T> responseConverter,
+               EventListener eventListener) {
         this.requestFactory = requestFactory;
         this.args = args;
-        this.callFactory = callFactory;
+        this.clientRouter = clientRouter;
         this.responseConverter = responseConverter;
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * 本次调用的事件监听器
+     */
+    EventListener eventListener() {
+        return eventListener;
     }
 
     @Override
@@ -142,6 +157,7 @@ final class OkMqttCall<T> implements Call<T> {
         synchronized (this) {
             if (executed) throw new IllegalStateException("Already executed.");
             executed = true;
+            eventListener.callStart();
 
             // 同步得到call/failure，若call和failure为空，则执行创建原始调用
             call = rawCall;
@@ -164,17 +180,38 @@ final class OkMqttCall<T> implements Call<T> {
         // 若状态为取消，则调度取消动作，不在执行后续请求动作
         if (canceled) {
             call.cancel();
+            eventListener.callFailed(null);
             return;
         }
 
+        eventListener.publishStart();
         // 无响应请求
         if (callback == null) {
-            call.publish();
+            boolean queued;
+            try {
+                queued = offerToOutbox();
+            } catch (IOException | RuntimeException e) {
+                // 写入日志失败，例如记录超过分段大小
+                eventListener.callFailed(e);
+                return;
+            }
+            if (!queued) {
+                call.publish();
+            }
+            eventListener.callEnd();
+        } else if (requestFactory.correlationEngine() != null) {
+            // 通过关联 ID 匹配响应
+            enqueueCorrelated(call, callback);
         } else {
             // 请求入队
+            long timeoutNanos = timeoutNanos();
+            long publishNanos = System.nanoTime();
             call.enqueue(new org.sheedon.mqtt.Callback() {
                 @Override
                 public void onResponse(@NonNull org.sheedon.mqtt.Call call, @NonNull org.sheedon.mqtt.Response rawResponse) {
+                    recordLatency(publishNanos);
+                    eventListener.responseReceived(
+                            rawResponse.getBody() != null ? rawResponse.getBody().getTopic() : null);
                     Response<T> response;
                     try {
                         response = parseResponse(rawResponse);
@@ -187,7 +224,9 @@ final class OkMqttCall<T> implements Call<T> {
 
                 @Override
                 public void onFailure(@Nullable Throwable e) {
-                    dealWithCallback(callback, OkMqttCall.this, null, e, false);
+                    Throwable failure = Utils.failure(e);
+                    recordFailure(failure, timeoutNanos);
+                    dealWithCallback(callback, OkMqttCall.this, null, failure, false);
                 }
 
                 private void callFailure(Throwable e) {
@@ -201,10 +240,107 @@ final class OkMqttCall<T> implements Call<T> {
         }
     }
 
+    /**
+     * 在 {@link CorrelationEngine} 中登记本次调用，由共享的响应订阅按关联 ID 反馈结果
+     */
+    private void enqueueCorrelated(org.sheedon.mqtt.Call call, Callback<T> callback) {
+        CorrelationEngine engine = requestFactory.correlationEngine();
+        long id;
+        synchronized (this) {
+            id = correlationId;
+        }
+        long timeoutNanos = timeoutNanos();
+        long publishNanos = System.nanoTime();
+        CorrelationEngine.Pending pending = new CorrelationEngine.Pending(id, timeoutNanos) {
+            @Override
+            void publish() {
+                if (!canceled) {
+                    call.publish();
+                }
+            }
+
+            @Override
+            void onReply(org.sheedon.mqtt.Response rawResponse) {
+                recordLatency(publishNanos);
+                eventListener.responseReceived(
+                        rawResponse.getBody() != null ? rawResponse.getBody().getTopic() : null);
+                Response<T> response;
+                try {
+                    response = parseResponse(rawResponse);
+                } catch (Throwable e) {
+                    throwIfFatal(e);
+                    dealWithCallback(callback, OkMqttCall.this, null, e, false);
+                    return;
+                }
+                dealWithCallback(callback, OkMqttCall.this, response, null, true);
+            }
+
+            @Override
+            void onFailure(Throwable t) {
+                recordFailure(t, timeoutNanos);
+                dealWithCallback(callback, OkMqttCall.this, null, t, false);
+            }
+        };
+        try {
+            engine.enqueue(requestFactory.replyTopic(), requestFactory.replyIdSegment(),
+                    requestFactory.replyQos(), pending);
+        } catch (IllegalStateException e) {
+            dealWithCallback(callback, OkMqttCall.this, null, e, false);
+        }
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.AdaptiveTimeout @AdaptiveTimeout} 方法记录本次响应延迟
+     *
+     * @param publishNanos 发送时间
+     */
+    private void recordLatency(long publishNanos) {
+        LatencyEstimator estimator = requestFactory.latencyEstimator();
+        if (estimator != null) {
+            estimator.onResponse(System.nanoTime() - publishNanos);
+        }
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.AdaptiveTimeout @AdaptiveTimeout} 方法响应超时时放宽超时时间
+     *
+     * @param timeoutNanos 本次调用使用的超时时间
+     */
+    private void recordFailure(@Nullable Throwable t, long timeoutNanos) {
+        LatencyEstimator estimator = requestFactory.latencyEstimator();
+        if (estimator != null && t instanceof MqttTimeoutException) {
+            estimator.onTimeout(timeoutNanos);
+        }
+    }
+
+    /**
+     * 本次调用使用的响应超时时间，单位纳秒
+     */
+    private synchronized long timeoutNanos() {
+        return requestBuilder != null ? requestBuilder.timeoutNanos() : -1;
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Durable @Durable} 消息在离线时写入发件箱，
+     * 返回 true 表示已由发件箱接管，无需直接发送。
+     */
+    private boolean offerToOutbox() throws IOException {
+        Outbox outbox = requestFactory.outbox();
+        if (outbox == null) {
+            return false;
+        }
+        RequestBuilder requestBuilder;
+        synchronized (this) {
+            requestBuilder = this.requestBuilder;
+        }
+        return requestBuilder != null && outbox.offer(requestBuilder.outboxRecord());
+    }
+
     /**
      * 处理反馈结果。
      * 根据isSuccess得知该请求是否请求成功。
      * 由callback将call和响应结果response发送给请求执行者。
+     * 使用者的 onResponse 抛出异常时，改为以该异常回调 onFailure；onFailure 抛出的异常不再处理。
      *
      * @param callback  反馈监听
      * @param call      Call
@@ -214,20 +350,34 @@ final class OkMqttCall<T> implements Call<T> {
      */
     private void dealWithCallback(Callback<T> callback, Call<T> call, Response<T> response, Throwable t, boolean isSuccess) {
 
-        if (callback == null)
-            return;
-
-        try {
+        if (callback != null) {
             if (isSuccess) {
-                callback.onResponse(call, response);
-            } else {
-                callback.onFailure(call, t);
+                try {
+                    callback.onResponse(call, response);
+                } catch (Throwable throwable) {
+                    throwIfFatal(throwable);
+                    isSuccess = false;
+                    t = throwable;
+                }
+            }
+            if (!isSuccess) {
+                try {
+                    callback.onFailure(call, t);
+                } catch (Throwable throwable) {
+                    throwIfFatal(throwable);
+                }
             }
-        } catch (Throwable throwable) {
-            throwIfFatal(throwable);
-            t.printStackTrace(); // TODO this is not great
         }
 
+        if (callback instanceof DispatchingCallback) {
+            // 结束事件由回调在回调执行器上触发
+            return;
+        }
+        if (isSuccess) {
+            eventListener.callEnd();
+        } else {
+            eventListener.callFailed(t);
+        }
     }
 
     /**
@@ -236,8 +386,18 @@ final class OkMqttCall<T> implements Call<T> {
      * @return org.sheedon.mqtt.Call okmqtt中的Call
      * @throws IOException
      */
+    @GuardedBy("this")
     private org.sheedon.mqtt.Call createRawCall() throws IOException {
-        org.sheedon.mqtt.Call call = callFactory.newCall(requestFactory.create(args));
+        RequestBuilder requestBuilder = this.requestBuilder =
+                requestFactory.applyArgs(eventListener, args, false);
+        CorrelationEngine engine = requestFactory.correlationEngine();
+        if (engine != null) {
+            correlationId = engine.nextId();
+            requestBuilder.setCorrelationId(engine.format(correlationId), requestFactory.correlationField());
+        }
+        Request request = requestFactory.create(requestBuilder);
+        org.sheedon.mqtt.Call call =
+                clientRouter.callFactory(requestBuilder.routingTopic()).newCall(request);
         if (call == null) {
             throw new NullPointerException("MqttFactory returned null.");
         }
@@ -255,8 +415,10 @@ final class OkMqttCall<T> implements Call<T> {
         ResponseBody rawBody = rawResponse.getBody();
 
         try {
+            eventListener.responseConvertStart();
             T body = responseConverter.convert(rawBody);
-            return Response.success(body, rawResponse);
+            eventListener.responseConvertEnd();
+            return requestFactory.success(responseConverter, body, rawResponse);
         } catch (RuntimeException e) {
             // If the underlying source threw an exception, propagate that rather than indicating it was
             // a runtime exception.
@@ -280,12 +442,18 @@ final class OkMqttCall<T> implements Call<T> {
         canceled = true;
 
         org.sheedon.mqtt.Call call;
+        long id;
         synchronized (this) {
             call = rawCall;
+            id = correlationId;
         }
         if (call != null) {
             call.cancel();
         }
+        CorrelationEngine engine = requestFactory.correlationEngine();
+        if (engine != null && id != 0) {
+            engine.cancel(id, MqttCanceledException.INSTANCE);
+        }
     }
 
     /**
@@ -300,4 +468,13 @@ final class OkMqttCall<T> implements Call<T> {
             return rawCall != null && rawCall.isCanceled();
         }
     }
+
+    /**
+     * 将使用者回调切换到回调执行器执行的回调。
+     * <p>
+     * {@link EventListener#callbackDispatched()} 在回调执行器上触发，为保证其先于结束事件，
+     * {@link EventListener#callEnd()}、{@link EventListener#callFailed(Throwable)} 由实现者在使用者回调执行后触发。
+     */
+    interface DispatchingCallback<T> extends Callback<T> {
+    }
 }
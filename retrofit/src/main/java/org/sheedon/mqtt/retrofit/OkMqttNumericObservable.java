@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
+import org.sheedon.mqtt.FullCallback;
+import org.sheedon.mqtt.ObservableFactory;
+import org.sheedon.mqtt.ResponseBody;
+import org.sheedon.mqtt.Subscribe;
+
+import static org.sheedon.mqtt.retrofit.Utils.throwIfFatal;
+
+/**
+ * {@link NumericObservable} 在 OkMqtt 上的实现，直接由原始响应解析数值并回调。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:58
+ */
+final class OkMqttNumericObservable implements NumericObservable {
+
+    private final RequestFactory requestFactory;
+    private final Object[] args;
+    private final ClientRouter clientRouter;
+    private final EventListener eventListener;
+
+    private volatile boolean canceled;
+    @GuardedBy("this")
+    private @Nullable
+    org.sheedon.mqtt.Observable rawObservable;
+    @GuardedBy("this")
+    private SubscribeTopic[] liveTopics = new SubscribeTopic[0];
+    @GuardedBy("this")
+    private boolean executed;
+
+    OkMqttNumericObservable(RequestFactory requestFactory, Object[] args,
+                            ClientRouter clientRouter, EventListener eventListener) {
+        this.requestFactory = requestFactory;
+        this.args = args;
+        this.clientRouter = clientRouter;
+        this.eventListener = eventListener;
+    }
+
+    @Override
+    public void enqueue(DoubleConsumer consumer) {
+        enqueue(new FullCallback() {
+            @Override
+            public void onResponse(@Nullable MqttWireMessage response) {
+                eventListener.subscribeAck();
+            }
+
+            @Override
+            public void onResponse(@NonNull org.sheedon.mqtt.Observable observable,
+                                   @NonNull org.sheedon.mqtt.Response rawResponse) {
+                ResponseBody body = rawResponse.getBody();
+                if (canceled || body == null) {
+                    return;
+                }
+                double value;
+                try {
+                    value = NumericConverters.DOUBLE.convert(body);
+                } catch (Throwable e) {
+                    throwIfFatal(e);
+                    consumer.onFailure(e);
+                    return;
+                }
+                consumer.onValue(value, body.getTopic());
+            }
+
+            @Override
+            public void onFailure(@Nullable Throwable e) {
+                Throwable failure = Utils.failure(e);
+                fail(failure);
+                consumer.onFailure(failure);
+            }
+        }, consumer::onFailure);
+    }
+
+    @Override
+    public void enqueue(LongConsumer consumer) {
+        enqueue(new FullCallback() {
+            @Override
+            public void onResponse(@Nullable MqttWireMessage response) {
+                eventListener.subscribeAck();
+            }
+
+            @Override
+            public void onResponse(@NonNull org.sheedon.mqtt.Observable observable,
+                                   @NonNull org.sheedon.mqtt.Response rawResponse) {
+                ResponseBody body = rawResponse.getBody();
+                if (canceled || body == null) {
+                    return;
+                }
+                long value;
+                try {
+                    value = NumericConverters.LONG.convert(body);
+                } catch (Throwable e) {
+                    throwIfFatal(e);
+                    consumer.onFailure(e);
+                    return;
+                }
+                consumer.onValue(value, body.getTopic());
+            }
+
+            @Override
+            public void onFailure(@Nullable Throwable e) {
+                Throwable failure = Utils.failure(e);
+                fail(failure);
+                consumer.onFailure(failure);
+            }
+        }, consumer::onFailure);
+    }
+
+    /**
+     * 创建原始订阅并入队
+     *
+     * @param callback        原始订阅回调
+     * @param creationFailure 创建订阅失败时回调
+     */
+    private void enqueue(FullCallback callback, FailureHandler creationFailure) {
+        eventListener.callStart();
+        org.sheedon.mqtt.Observable observable;
+        synchronized (this) {
+            if (executed) throw new IllegalStateException("Already executed.");
+            executed = true;
+            try {
+                observable = createRawObservable();
+            } catch (Throwable e) {
+                throwIfFatal(e);
+                eventListener.callFailed(e);
+                creationFailure.onFailure(e);
+                return;
+            }
+            rawObservable = observable;
+        }
+        if (canceled) {
+            observable.cancel();
+            eventListener.callFailed(null);
+            return;
+        }
+
+        eventListener.publishStart();
+        SubscriptionRegistry registry = requestFactory.subscriptionRegistry();
+        registry.add(liveTopics());
+        observable.enqueue(callback);
+    }
+
+    private org.sheedon.mqtt.Observable createRawObservable() {
+        boolean isSubscribe = requestFactory.isSubscribeAll;
+        for (Object arg : args) {
+            if (arg instanceof Subscribe) {
+                isSubscribe = true;
+                break;
+            }
+        }
+        RequestBuilder requestBuilder = requestFactory.applyArgs(eventListener, args, isSubscribe);
+        liveTopics = requestBuilder.liveTopics();
+        ObservableFactory observableFactory = clientRouter.observableFactory(requestBuilder.routingTopic());
+        return isSubscribe
+                ? observableFactory.newObservable(requestFactory.createSubscribe(requestBuilder))
+                : observableFactory.newObservable(requestFactory.create(requestBuilder));
+    }
+
+    private synchronized SubscribeTopic[] liveTopics() {
+        return liveTopics;
+    }
+
+    /**
+     * 订阅失败，不再需要在重连时恢复
+     */
+    private void fail(@Nullable Throwable e) {
+        eventListener.callFailed(e);
+        release();
+    }
+
+    /**
+     * 从存活订阅登记表中移除，只移除一次
+     */
+    private void release() {
+        SubscribeTopic[] topics;
+        synchronized (this) {
+            topics = liveTopics;
+            liveTopics = new SubscribeTopic[0];
+        }
+        requestFactory.subscriptionRegistry().remove(topics);
+    }
+
+    @Override
+    public void unsubscribe() {
+        org.sheedon.mqtt.Observable observable;
+        synchronized (this) {
+            observable = rawObservable;
+        }
+        release();
+        eventListener.callEnd();
+        if (observable != null) {
+            observable.unsubscribe(null);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        org.sheedon.mqtt.Observable observable;
+        synchronized (this) {
+            observable = rawObservable;
+        }
+        release();
+        if (observable != null) {
+            observable.cancel();
+        }
+        eventListener.callEnd();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        if (canceled) {
+            return true;
+        }
+        synchronized (this) {
+            return rawObservable != null && rawObservable.isCanceled();
+        }
+    }
+
+    /**
+     * 创建订阅失败的回调
+     */
+    private interface FailureHandler {
+        void onFailure(Throwable t);
+    }
+}
@@ -5,11 +5,12 @@ import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage
 import org.sheedon.mqtt.*
 import java.io.IOException
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * 关于Observable在OkMqtt的实现类，用于代理创建订阅调度
  *
- * 通过[observableFactory]将请求数据存储工厂[requestFactory]配置对应请求参数[args]，以获取真实Observable，
+ * 通过[clientRouter]选择的ObservableFactory，将请求数据存储工厂[requestFactory]配置对应请求参数[args]，以获取真实Observable，
  *
  * 对于Observable代理执行有以下四项
  * 1.
@@ -22,14 +23,18 @@ import java.io.IOException
 internal class OkMqttObservable<T> constructor(
     private val requestFactory: RequestFactory,
     private val args: Array<Any>,
-    private val observableFactory: ObservableFactory,
-    private val responseConverter: Converter<ResponseBody, T>
+    private val clientRouter: ClientRouter,
+    private val responseConverter: Converter<ResponseBody, T>,
+    val eventListener: EventListener
 ) : Observable<T> {
 
 
     @Volatile
     private var canceled: Boolean = false
 
+    // callEnd、callFailed 只触发一次
+    private val ended = AtomicBoolean()
+
     @GuardedBy("this")
     private var rawObservable: org.sheedon.mqtt.Observable? = null
 
@@ -39,6 +44,20 @@ internal class OkMqttObservable<T> constructor(
     @GuardedBy("this")
     private var executed = false
 
+    @GuardedBy("this")
+    private var sharedSubscriber: SubscriptionMultiplexer.Subscriber<T>? = null
+
+    // 本次调用向 mqtt-server 订阅的主题，入队时登记到 SubscriptionRegistry，用于重连后恢复
+    @GuardedBy("this")
+    private var liveTopics: Array<SubscribeTopic>? = null
+
+    @GuardedBy("this")
+    private var registered = false
+
+    // 登记时是否经由 SubscriptionMultiplexer 订阅
+    @GuardedBy("this")
+    private var registeredShared = false
+
     /**
      * 得到一个请求或订阅对象
      */
@@ -122,11 +141,15 @@ internal class OkMqttObservable<T> constructor(
      */
     @Throws(IOException::class)
     private fun createRawObservable(): org.sheedon.mqtt.Observable {
-        val count = args.filterIsInstance<org.sheedon.mqtt.Subscribe>().count()
-        return if (count > 0) {
-            observableFactory.newObservable(requestFactory.createSubscribe(args))
+        val isSubscribe = requestFactory.isSubscribeAll
+                || args.filterIsInstance<org.sheedon.mqtt.Subscribe>().count() > 0
+        val requestBuilder = requestFactory.applyArgs(eventListener, args, isSubscribe)
+        liveTopics = requestBuilder.liveTopics()
+        val observableFactory = clientRouter.observableFactory(requestBuilder.routingTopic())
+        return if (isSubscribe) {
+            observableFactory.newObservable(requestFactory.createSubscribe(requestBuilder))
         } else {
-            observableFactory.newObservable(requestFactory.create(args))
+            observableFactory.newObservable(requestFactory.create(requestBuilder))
         }
     }
 
@@ -134,19 +157,25 @@ internal class OkMqttObservable<T> constructor(
      * 订阅一个或者一组主题，通过该方法执行订阅，代表无需监听是否订阅成功以及不监听在此监听响应结果。
      */
     override fun enqueue() {
+        eventListener.callStart()
+        if (enqueueShared(null, null, null)) return
         // 构造真实的观察者observable和错误消息failure
         val (observable, failure) = createRealObservable()
         if (failure != null) {
+            failCall(failure)
             return
         }
 
         // 若状态为取消，则调度取消动作，不在执行后续请求动作
         if (canceled) {
             observable?.cancel()
+            failCall(null)
             return
         }
 
         // 执行订阅
+        eventListener.publishStart()
+        registerLive()
         observable?.enqueue()
     }
 
@@ -157,10 +186,17 @@ internal class OkMqttObservable<T> constructor(
      * @param consumer 响应消息消费者
      */
     override fun enqueue(consumer: Consumer<T>) {
+        eventListener.callStart()
+        if (enqueueShared(
+                null,
+                { consumer.onResponse(this@OkMqttObservable, it) },
+                { consumer.onFailure(this@OkMqttObservable, it) })
+        ) return
         // 构造真实的观察者observable和错误消息failure
         val (observable, failure) = createRealObservable()
         // 若错误内容不为空，则直接反馈错误
         if (failure != null) {
+            failCall(failure)
             consumer.onFailure(this@OkMqttObservable, failure)
             return
         }
@@ -168,13 +204,19 @@ internal class OkMqttObservable<T> constructor(
         // 若状态为取消，则调度取消动作，不在执行后续请求动作
         if (canceled) {
             observable?.cancel()
+            failCall(null)
             return
         }
 
         // 订阅消息入队
+        eventListener.publishStart()
+        registerLive()
         observable?.enqueue(object : ObservableBack {
             override fun onFailure(e: Throwable?) {
-                consumer.onFailure(this@OkMqttObservable, e)
+                val failure = Utils.failure(e)
+                unregisterLive()
+                failCall(failure)
+                consumer.onFailure(this@OkMqttObservable, failure)
             }
 
 
@@ -183,6 +225,7 @@ internal class OkMqttObservable<T> constructor(
                 observable: org.sheedon.mqtt.Observable,
                 rawResponse: org.sheedon.mqtt.Response
             ) {
+                eventListener.responseReceived(rawResponse.body?.topic)
                 try {
                     val response: Response<T> = parseResponse(rawResponse)
                     consumer.onResponse(this@OkMqttObservable, response)
@@ -201,10 +244,17 @@ internal class OkMqttObservable<T> constructor(
      * @param subscribe 订阅消息消费者
      */
     override fun enqueue(subscribe: Subscribe<T>) {
+        eventListener.callStart()
+        if (enqueueShared(
+                { subscribe.onResponse(this@OkMqttObservable, it) },
+                null,
+                { subscribe.onFailure(this@OkMqttObservable, it) })
+        ) return
         // 构造真实的观察者observable和错误消息failure
         val (observable, failure) = createRealObservable()
         // 若错误内容不为空，则直接反馈错误
         if (failure != null) {
+            failCall(failure)
             subscribe.onFailure(this@OkMqttObservable, failure)
             return
         }
@@ -212,16 +262,23 @@ internal class OkMqttObservable<T> constructor(
         // 若状态为取消，则调度取消动作，不在执行后续请求动作
         if (canceled) {
             observable?.cancel()
+            failCall(null)
             return
         }
 
         // 订阅消息入队
+        eventListener.publishStart()
+        registerLive()
         observable?.enqueue(object : SubscribeBack {
             override fun onFailure(e: Throwable?) {
-                subscribe.onFailure(this@OkMqttObservable, e)
+                val failure = Utils.failure(e)
+                unregisterLive()
+                failCall(failure)
+                subscribe.onFailure(this@OkMqttObservable, failure)
             }
 
             override fun onResponse(response: MqttWireMessage?) {
+                eventListener.subscribeAck()
                 try {
                     if (response is MqttSubscribe) {
                         subscribe.onResponse(this@OkMqttObservable, response)
@@ -242,10 +299,17 @@ internal class OkMqttObservable<T> constructor(
      * @param fullConsumer 订阅消息消费者
      */
     override fun enqueue(fullConsumer: FullConsumer<T>) {
+        eventListener.callStart()
+        if (enqueueShared(
+                { fullConsumer.onResponse(this@OkMqttObservable, it ?: MqttSubscribe(null, null)) },
+                { fullConsumer.onResponse(this@OkMqttObservable, it) },
+                { fullConsumer.onFailure(this@OkMqttObservable, it) })
+        ) return
         // 构造真实的观察者observable和错误消息failure
         val (observable, failure) = createRealObservable()
         // 若错误内容不为空，则直接反馈错误
         if (failure != null) {
+            failCall(failure)
             fullConsumer.onFailure(this@OkMqttObservable, failure)
             return
         }
@@ -253,13 +317,19 @@ internal class OkMqttObservable<T> constructor(
         // 若状态为取消，则调度取消动作，不在执行后续请求动作
         if (canceled) {
             observable?.cancel()
+            failCall(null)
             return
         }
 
         // 订阅消息入队
+        eventListener.publishStart()
+        registerLive()
         observable?.enqueue(object : FullCallback {
             override fun onFailure(e: Throwable?) {
-                fullConsumer.onFailure(this@OkMqttObservable, e)
+                val failure = Utils.failure(e)
+                unregisterLive()
+                failCall(failure)
+                fullConsumer.onFailure(this@OkMqttObservable, failure)
             }
 
             @Suppress("PARAMETER_NAME_CHANGED_ON_OVERRIDE")
@@ -267,6 +337,7 @@ internal class OkMqttObservable<T> constructor(
                 observable: org.sheedon.mqtt.Observable,
                 rawResponse: org.sheedon.mqtt.Response
             ) {
+                eventListener.responseReceived(rawResponse.body?.topic)
                 try {
                     val response: Response<T> = parseResponse(rawResponse)
                     fullConsumer.onResponse(this@OkMqttObservable, response)
@@ -276,6 +347,7 @@ internal class OkMqttObservable<T> constructor(
             }
 
             override fun onResponse(response: MqttWireMessage?) {
+                eventListener.subscribeAck()
                 try {
                     if (response is MqttSubscribe) {
                         fullConsumer.onResponse(this@OkMqttObservable, response)
@@ -297,6 +369,16 @@ internal class OkMqttObservable<T> constructor(
      * @param callback 订阅消息消费者
      */
     override fun unsubscribe(callback: Subscribe<T>?) {
+        unregisterLive()
+        // 复用订阅时只离开订阅组，由订阅复用器决定是否向 mqtt-server 取消订阅
+        val shared = synchronized(this) { sharedSubscriber.also { sharedSubscriber = null } }
+        if (shared != null) {
+            endCall()
+            requestFactory.multiplexer()?.unsubscribe(shared)
+            callback?.onResponse(this@OkMqttObservable, MqttSubscribe(null, null))
+            return
+        }
+
         // 构造真实的观察者observable和错误消息failure
         val (observable, failure) = createRealObservable()
         // 若错误内容不为空，则直接反馈错误
@@ -312,12 +394,13 @@ internal class OkMqttObservable<T> constructor(
         }
 
         // 取消订阅消息入队
+        endCall()
         if (callback == null) {
             observable?.unsubscribe(null)
         } else {
             observable?.unsubscribe(object : SubscribeBack {
                 override fun onFailure(e: Throwable?) {
-                    callback.onFailure(this@OkMqttObservable, e)
+                    callback.onFailure(this@OkMqttObservable, Utils.failure(e))
                 }
 
                 override fun onResponse(response: MqttWireMessage?) {
@@ -333,6 +416,118 @@ internal class OkMqttObservable<T> constructor(
     }
 
 
+    /**
+     * 开启订阅复用时，加入[SubscriptionMultiplexer]中对应订阅主题的订阅组，返回true表示已由订阅复用器处理。
+     *
+     * @param onAck     订阅确认
+     * @param onMessage 收到消息
+     * @param onError   订阅失败或消息转换失败
+     */
+    private fun enqueueShared(
+        onAck: ((MqttSubscribe?) -> Unit)?,
+        onMessage: ((Response<T>) -> Unit)?,
+        onError: ((Throwable?) -> Unit)?
+    ): Boolean {
+        val multiplexer = requestFactory.multiplexer() ?: return false
+        if (args.any { it is org.sheedon.mqtt.Subscribe }) return false
+
+        val requestBuilder: RequestBuilder
+        val subscribe: org.sheedon.mqtt.Subscribe
+        try {
+            requestBuilder = requestFactory.applyArgs(eventListener, args, true)
+            subscribe = requestFactory.createSubscribe(requestBuilder)
+        } catch (e: Throwable) {
+            Utils.throwIfFatal(e)
+            failCall(e)
+            onError?.invoke(e)
+            return true
+        }
+
+        if (canceled) {
+            failCall(null)
+            return true
+        }
+
+        val subscriber = object : SubscriptionMultiplexer.Subscriber<T>(
+            responseConverter,
+            eventListener,
+            requestFactory.subscribeTemplate(),
+            requestFactory.bodyOnlyResponses
+        ) {
+            override fun onSubscribed(ack: MqttSubscribe?) {
+                eventListener.subscribeAck()
+                try {
+                    onAck?.invoke(ack)
+                } catch (e: Throwable) {
+                    Utils.throwIfFatal(e)
+                    onError?.invoke(e)
+                }
+            }
+
+            override fun onResponse(response: Response<T>) {
+                try {
+                    onMessage?.invoke(response)
+                } catch (e: Throwable) {
+                    Utils.throwIfFatal(e)
+                    onError?.invoke(e)
+                }
+            }
+
+            override fun onFailure(t: Throwable?) {
+                unregisterLive()
+                failCall(t)
+                onError?.invoke(t)
+            }
+
+            override fun onConvertFailure(t: Throwable) {
+                onError?.invoke(t)
+            }
+        }
+        synchronized(this) {
+            sharedSubscriber = subscriber
+            liveTopics = requestBuilder.liveTopics()
+        }
+
+        eventListener.publishStart()
+        registerLive()
+        multiplexer.subscribe(
+            TopicTemplate.wildcardUnresolved(requestBuilder.subscribeTopic() ?: ""),
+            requestBuilder.subscribeQos(),
+            requestBuilder.subscriptionType(),
+            subscribe,
+            subscriber
+        )
+        return true
+    }
+
+    /**
+     * 将订阅主题登记到[SubscriptionRegistry]，重复调用只登记一次
+     */
+    private fun registerLive() {
+        var shared = false
+        val topics = synchronized(this) {
+            if (registered) return
+            registeredShared = sharedSubscriber != null
+            shared = registeredShared
+            liveTopics?.also { registered = true }
+        } ?: return
+        requestFactory.subscriptionRegistry().add(topics, shared)
+    }
+
+    /**
+     * 从[SubscriptionRegistry]中移除订阅主题
+     */
+    private fun unregisterLive() {
+        var shared = false
+        val topics = synchronized(this) {
+            if (!registered) return
+            registered = false
+            shared = registeredShared
+            liveTopics
+        } ?: return
+        requestFactory.subscriptionRegistry().remove(topics, shared)
+    }
+
     /**
      * 代理创建原始调用
      *
@@ -371,8 +566,10 @@ internal class OkMqttObservable<T> constructor(
         val rawBody: ResponseBody? = rawResponse.body
 
         return try {
+            eventListener.responseConvertStart()
             val body = responseConverter.convert(rawBody)
-            Response.success(body, rawResponse)
+            eventListener.responseConvertEnd()
+            requestFactory.success(responseConverter, body, rawResponse)
         } catch (e: java.lang.RuntimeException) {
             // If the underlying source threw an exception, propagate that rather than indicating it was
             // a runtime exception.
@@ -387,8 +584,34 @@ internal class OkMqttObservable<T> constructor(
         canceled = true
 
         var observable: org.sheedon.mqtt.Observable?
-        synchronized(this) { observable = rawObservable }
+        val shared: SubscriptionMultiplexer.Subscriber<T>?
+        synchronized(this) {
+            observable = rawObservable
+            shared = sharedSubscriber
+            sharedSubscriber = null
+        }
         observable?.cancel()
+        shared?.let { requestFactory.multiplexer()?.unsubscribe(it) }
+        unregisterLive()
+        endCall()
+    }
+
+    /**
+     * 触发结束事件，取消订阅后再取消等情况下只触发一次
+     */
+    private fun endCall() {
+        if (ended.compareAndSet(false, true)) {
+            eventListener.callEnd()
+        }
+    }
+
+    /**
+     * 触发失败事件，已触发结束事件或失败事件时不再触发
+     */
+    private fun failCall(t: Throwable?) {
+        if (ended.compareAndSet(false, true)) {
+            eventListener.callFailed(t)
+        }
     }
 
     /**
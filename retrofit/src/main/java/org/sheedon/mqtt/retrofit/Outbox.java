@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.sheedon.mqtt.Request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 离线发件箱，用于 {@link org.sheedon.mqtt.retrofit.mqtt.Durable @Durable} 消息的可靠投递。
+ * <p>
+ * 1. 连接断开期间发送的消息序列化后追加到内存映射的分段日志中，不经过 SQLite 等数据库，每条消息只有一次内存拷贝。
+ * 2. 日志每隔 {@link #SYNC_INTERVAL_MILLIS} 毫秒统一刷盘一次（组提交），进程被杀时最多丢失该时间窗口内的消息。
+ * 3. 日志总大小超过上限时丢弃最旧的分段，丢弃数量可通过 {@link #droppedCount()} 获取。
+ * 4. 连接恢复后，在后台线程按原顺序逐条补发；补发完成前新发送的消息同样进入日志，以保证顺序。
+ * 5. 一条消息只有在发送回调确认后才从日志中移除，发送失败或连接断开时保留，等待下一次连接成功时重发。
+ * 补发过程通过 {@link #setEventListener(EventListener)} 设置的监听器报告，每条消息一次
+ * {@code callStart → publishStart → callEnd / callFailed}。
+ * 6. 同一进程中同一目录只能打开一个发件箱，{@link Retrofit#newBuilder()} 派生的实例共用同一个发件箱。
+ * <p>
+ * OkMqtt 不对外通知连接状态，需要使用者在连接成功、断开时分别调用 {@link #onConnected()}、{@link #onDisconnected()}。
+ * 在首次调用 {@link #onConnected()} 之前，发件箱视为离线。
+ *
+ * <pre><code>
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .client(client)
+ *     .outbox(new File(context.getFilesDir(), "mqtt-outbox"))
+ *     .build();
+ *
+ * // 在连接回调中
+ * retrofit.outbox().onConnected();
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 17:20
+ */
+public final class Outbox implements Closeable {
+
+    /**
+     * 默认磁盘占用上限
+     */
+    static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    // 单个分段文件大小
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    // 组提交的刷盘间隔
+    private static final long SYNC_INTERVAL_MILLIS = 50;
+
+    // 补发消息等待发送回调的超时时间
+    private static final long DELIVERY_TIMEOUT_MILLIS = 10_000;
+
+    private static final int VERSION = 1;
+
+    // 当前进程中已打开的日志目录
+    @GuardedBy("OPEN_DIRECTORIES")
+    private static final Set<String> OPEN_DIRECTORIES = new HashSet<>();
+
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final OutboxJournal journal;
+    // 正在等待发送回调的记录，同一时间只补发一条以保证顺序
+    @GuardedBy("lock")
+    private boolean inFlight;
+    @GuardedBy("lock")
+    private boolean closed;
+    private final String path;
+    private final ClientRouter clientRouter;
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean connected;
+    private volatile EventListener eventListener = EventListener.NONE;
+
+    /**
+     * 打开 {@code directory} 中的日志
+     *
+     * @throws IllegalStateException 该目录已被当前进程中的其他发件箱打开
+     */
+    static Outbox open(File directory, long maxBytes, ClientRouter clientRouter) throws IOException {
+        String path = directory.getCanonicalPath();
+        synchronized (OPEN_DIRECTORIES) {
+            if (!OPEN_DIRECTORIES.add(path)) {
+                throw new IllegalStateException("Outbox " + directory + " is already open. "
+                        + "Share it through Retrofit.newBuilder() or close the previous one first.");
+            }
+        }
+        try {
+            return new Outbox(path, new OutboxJournal(directory, SEGMENT_SIZE, maxBytes), clientRouter);
+        } catch (IOException | RuntimeException e) {
+            synchronized (OPEN_DIRECTORIES) {
+                OPEN_DIRECTORIES.remove(path);
+            }
+            throw e;
+        }
+    }
+
+    private Outbox(String path, OutboxJournal journal, ClientRouter clientRouter) {
+        this.path = path;
+        this.journal = journal;
+        this.clientRouter = clientRouter;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MqttRetrofit Outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush,
+                SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 连接成功时调用，开始补发离线期间积压的消息。
+     */
+    public void onConnected() {
+        connected = true;
+        scheduleDrain();
+    }
+
+    /**
+     * 连接断开时调用，之后的 {@code @Durable} 消息将写入日志。
+     */
+    public void onDisconnected() {
+        connected = false;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 设置补发消息使用的事件监听器，默认为 {@link EventListener#NONE}
+     */
+    public void setEventListener(EventListener eventListener) {
+        this.eventListener = Objects.requireNonNull(eventListener, "eventListener == null");
+    }
+
+    /**
+     * 是否没有待补发的消息
+     */
+    public boolean isEmpty() {
+        synchronized (lock) {
+            return journal.isEmpty();
+        }
+    }
+
+    /**
+     * 因超出磁盘上限而被丢弃的消息数
+     */
+    public long droppedCount() {
+        synchronized (lock) {
+            return journal.droppedCount();
+        }
+    }
+
+    /**
+     * 停止补发并将日志刷到磁盘
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            journal.close();
+        }
+        synchronized (OPEN_DIRECTORIES) {
+            OPEN_DIRECTORIES.remove(path);
+        }
+    }
+
+    /**
+     * 离线或仍有积压消息时将 {@code record} 写入日志并返回 true，
+     * 否则返回 false，由调用方直接发送。
+     *
+     * @throws IllegalArgumentException 记录超过单个分段的大小
+     */
+    boolean offer(Record record) throws IOException {
+        synchronized (lock) {
+            if (connected && journal.isEmpty() && !inFlight) {
+                return false;
+            }
+            journal.append(record.encode());
+        }
+        if (connected) {
+            scheduleDrain();
+        }
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (!executor.isShutdown()) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * 在锁内取出最旧的一条记录，在锁外发送，收到发送回调后再从日志中移除
+     */
+    private void drain() {
+        EventListener eventListener = this.eventListener;
+        while (connected) {
+            byte[] data;
+            long position;
+            synchronized (lock) {
+                if (inFlight || closed) {
+                    return;
+                }
+                position = journal.position();
+                if (position < 0) {
+                    return;
+                }
+                data = journal.peek();
+                inFlight = true;
+            }
+
+            eventListener.callStart();
+            Record record;
+            try {
+                record = Record.decode(data);
+            } catch (IOException e) {
+                // 无法解析的记录直接丢弃
+                complete(position);
+                eventListener.callFailed(e);
+                continue;
+            }
+            try {
+                eventListener.publishStart();
+                clientRouter.callFactory(record.topic).newCall(record.toRequest())
+                        .enqueue(new Delivery(position, eventListener));
+            } catch (RuntimeException e) {
+                // 发送失败，保留该记录，等待下一次连接成功时补发
+                release();
+                eventListener.callFailed(e);
+            }
+            return;
+        }
+    }
+
+    /**
+     * 记录已补发，从日志中移除
+     */
+    private void complete(long position) {
+        synchronized (lock) {
+            inFlight = false;
+            if (!closed) {
+                journal.remove(position);
+            }
+        }
+    }
+
+    /**
+     * 记录补发失败，保留在日志中
+     */
+    private void release() {
+        synchronized (lock) {
+            inFlight = false;
+        }
+    }
+
+    private void flush() {
+        synchronized (lock) {
+            journal.flush();
+        }
+    }
+
+    /**
+     * 一条补发消息的发送回调。
+     * <p>
+     * OkMqtt 不单独通知发布确认，因此以调用的回调为准：收到响应，或已发出但等待响应超时，视为已送达；
+     * 连接断开等其他失败保留该记录，等待下一次连接成功时重发（至少一次）。
+     */
+    private final class Delivery implements org.sheedon.mqtt.Callback {
+        private final long position;
+        private final EventListener eventListener;
+
+        Delivery(long position, EventListener eventListener) {
+            this.position = position;
+            this.eventListener = eventListener;
+        }
+
+        @Override
+        public void onResponse(@NonNull org.sheedon.mqtt.Call call, @NonNull org.sheedon.mqtt.Response rawResponse) {
+            delivered();
+        }
+
+        @Override
+        public void onFailure(@Nullable Throwable e) {
+            Throwable failure = Utils.failure(e);
+            if (failure instanceof MqttTimeoutException) {
+                delivered();
+                return;
+            }
+            release();
+            eventListener.callFailed(failure);
+        }
+
+        private void delivered() {
+            complete(position);
+            eventListener.callEnd();
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 日志中保存的一条消息
+     */
+    static final class Record {
+        final String topic;
+        final int qos;
+        final boolean retained;
+        final String charset;
+        final boolean autoEncode;
+        final String payload;
+
+        Record(String topic, int qos, boolean retained,
+               String charset, boolean autoEncode, String payload) {
+            this.topic = topic;
+            this.qos = qos;
+            this.retained = retained;
+            this.charset = charset;
+            this.autoEncode = autoEncode;
+            this.payload = payload;
+        }
+
+        Request toRequest() {
+            return new Request.Builder()
+                    .topic(topic, qos, retained)
+                    .data(payload)
+                    .delayMilliSecond(DELIVERY_TIMEOUT_MILLIS)
+                    .charset(charset, autoEncode)
+                    .build();
+        }
+
+        byte[] encode() throws IOException {
+            byte[] payload = this.payload.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + topic.length() + 16);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(VERSION);
+            output.writeUTF(topic);
+            output.writeByte(qos);
+            output.writeBoolean(retained);
+            output.writeUTF(charset);
+            output.writeBoolean(autoEncode);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.flush();
+            return bytes.toByteArray();
+        }
+
+        static Record decode(byte[] data) throws IOException {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+            int version = input.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported outbox record version " + version);
+            }
+            String topic = input.readUTF();
+            int qos = input.readByte();
+            boolean retained = input.readBoolean();
+            String charset = input.readUTF();
+            boolean autoEncode = input.readBoolean();
+            byte[] payload = new byte[input.readInt()];
+            input.readFully(payload);
+            return new Record(topic, qos, retained, charset, autoEncode,
+                    new String(payload, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * {@link Outbox} 使用的追加写日志，由若干个固定大小、通过内存映射读写的分段文件组成。
+ * <p>
+ * 分段文件格式：
+ * <pre>
+ * [int magic][int readPosition] [int length][int crc32][byte[length] data] ... [int 0]
+ * </pre>
+ * 写入时先写数据和校验值，最后写长度，长度为 0 表示日志结尾，因此进程中途退出时最多丢失最后一条未写完的记录。
+ * readPosition 记录已补发到的位置，全部补发完的分段文件会被删除。
+ * <p>
+ * 追加只写入映射内存，由 {@link #flush()} 统一刷盘（组提交）；
+ * 分段数超过上限时丢弃最旧的分段，以限制磁盘占用。
+ * 所有方法都不是线程安全的，由 {@link Outbox} 负责同步。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 17:20
+ */
+final class OutboxJournal implements Closeable {
+
+    private static final int MAGIC = 0x4d514f42; // "MQOB"
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SUFFIX = ".seg";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final CRC32 crc32 = new CRC32();
+
+    // 按序号升序排列，最后一个为当前写入的分段
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long droppedCount;
+
+    OutboxJournal(File directory, int segmentSize, long maxBytes) throws IOException {
+        if (segmentSize <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create outbox directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, maxBytes / segmentSize);
+        recover();
+    }
+
+    /**
+     * 追加一条记录
+     */
+    void append(byte[] data) throws IOException {
+        int need = RECORD_HEADER_SIZE + data.length;
+        if (need > segmentSize - HEADER_SIZE - 4) {
+            throw new IllegalArgumentException("Outbox record too large: " + data.length);
+        }
+        Segment segment = segments.getLast();
+        if (segment.writePosition + need + 4 > segmentSize) {
+            segment = rotate();
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.writePosition;
+        crc32.reset();
+        crc32.update(data, 0, data.length);
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.put(data);
+        buffer.putInt(position + 4, (int) crc32.getValue());
+        // 最后写入长度，作为该记录的提交标记
+        buffer.putInt(position, data.length);
+        segment.writePosition = position + need;
+        segment.dirty = true;
+    }
+
+    /**
+     * 读取最旧的一条未补发记录，没有时返回 null
+     */
+    @Nullable
+    byte[] peek() {
+        Segment segment = head();
+        if (segment == null) {
+            return null;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.readPosition;
+        byte[] data = new byte[buffer.getInt(position)];
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * 最旧一条未补发记录的位置，没有时返回 -1
+     */
+    long position() {
+        Segment segment = head();
+        if (segment == null) {
+            return -1;
+        }
+        return segment.sequence << 32 | segment.readPosition;
+    }
+
+    /**
+     * 标记位于 {@code position} 的记录已补发。
+     * 该记录已因超出上限被丢弃、不再是最旧的一条时返回 false。
+     */
+    boolean remove(long position) {
+        Segment segment = head();
+        if (segment == null || (segment.sequence << 32 | segment.readPosition) != position) {
+            return false;
+        }
+        int readPosition = segment.readPosition;
+        segment.readPosition = readPosition + RECORD_HEADER_SIZE + segment.buffer.getInt(readPosition);
+        segment.buffer.putInt(4, segment.readPosition);
+        segment.dirty = true;
+        return true;
+    }
+
+    boolean isEmpty() {
+        return head() == null;
+    }
+
+    /**
+     * 因超出磁盘上限而丢弃的记录数
+     */
+    long droppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 将有改动的分段刷到磁盘
+     */
+    void flush() {
+        for (Segment segment : segments) {
+            if (segment.dirty) {
+                segment.dirty = false;
+                segment.buffer.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * 返回仍有未补发记录的最旧分段，同时删除已补发完的旧分段
+     */
+    @Nullable
+    private Segment head() {
+        while (true) {
+            Segment segment = segments.getFirst();
+            if (segment.readPosition < segment.writePosition) {
+                return segment;
+            }
+            if (segment == segments.getLast()) {
+                return null;
+            }
+            segments.removeFirst();
+            delete(segment);
+        }
+    }
+
+    private Segment rotate() throws IOException {
+        Segment current = segments.getLast();
+        current.buffer.force();
+        current.dirty = false;
+
+        Segment segment = open(current.sequence + 1);
+        segments.addLast(segment);
+
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.removeFirst();
+            droppedCount += countRecords(oldest);
+            delete(oldest);
+        }
+        return segment;
+    }
+
+    /**
+     * 打开目录中已存在的分段，定位每个分段的写入位置，并截断末尾不完整的记录
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        long[] sequences = new long[files == null ? 0 : files.length];
+        int count = 0;
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    String name = file.getName();
+                    long sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                    sequences[count++] = sequence;
+                } catch (NumberFormatException ignored) {
+                    // 非日志文件
+                }
+            }
+        }
+        Arrays.sort(sequences, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            Segment segment = open(sequences[i]);
+            if (segment.buffer.getInt(0) != MAGIC) {
+                delete(segment);
+                continue;
+            }
+            segment.writePosition = scan(segment.buffer);
+            int readPosition = segment.buffer.getInt(4);
+            segment.readPosition = readPosition < HEADER_SIZE || readPosition > segment.writePosition
+                    ? HEADER_SIZE : readPosition;
+            segments.addLast(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.addLast(open(0));
+        }
+        // 清理已补发完的分段
+        head();
+    }
+
+    private Segment open(long sequence) throws IOException {
+        File file = new File(directory, String.format(Locale.US, "%016d%s", sequence, SUFFIX));
+        boolean created = !file.exists();
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        Segment segment = new Segment(sequence, file, buffer);
+        if (created) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, HEADER_SIZE);
+        }
+        return segment;
+    }
+
+    /**
+     * 从头扫描分段，返回最后一条完整记录之后的位置
+     */
+    private int scan(MappedByteBuffer buffer) {
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            crc32.reset();
+            for (int i = position + RECORD_HEADER_SIZE, end = i + length; i < end; i++) {
+                crc32.update(buffer.get(i));
+            }
+            if ((int) crc32.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        // 截断不完整的记录，避免之后追加的记录接在脏数据后面
+        if (position + 4 <= segmentSize) {
+            buffer.putInt(position, 0);
+        }
+        return position;
+    }
+
+    private static long countRecords(Segment segment) {
+        long count = 0;
+        for (int position = segment.readPosition; position < segment.writePosition; count++) {
+            position += RECORD_HEADER_SIZE + segment.buffer.getInt(position);
+        }
+        return count;
+    }
+
+    private static void delete(Segment segment) {
+        // 映射会在缓冲区被回收时释放，删除文件不影响仍持有的映射
+        //noinspection ResultOfMethodCallIgnored
+        segment.file.delete();
+    }
+
+    private static final class Segment {
+        final long sequence;
+        final File file;
+        final MappedByteBuffer buffer;
+        int readPosition = HEADER_SIZE;
+        int writePosition = HEADER_SIZE;
+        boolean dirty;
+
+        Segment(long sequence, File file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
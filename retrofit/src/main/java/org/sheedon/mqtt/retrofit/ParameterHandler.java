@@ -33,11 +33,14 @@ import androidx.annotation.Nullable;
 
 import org.sheedon.mqtt.RequestBody;
 import org.sheedon.mqtt.Subscribe;
-import org.sheedon.mqtt.retrofit.mqtt.PathType;
 
 import java.io.IOException;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 参数处理程序
@@ -49,6 +52,32 @@ import java.util.Objects;
 abstract class ParameterHandler<T> {
     abstract void apply(RequestBuilder builder, @Nullable T value) throws IOException;
 
+    /**
+     * 开始处理 {@link #iterable()}、{@link #array()} 的元素
+     */
+    void beginValues(RequestBuilder builder) {
+    }
+
+    /**
+     * 处理 {@link #iterable()}、{@link #array()} 的一个元素
+     */
+    void applyValue(RequestBuilder builder, @Nullable T value) throws IOException {
+        apply(builder, value);
+    }
+
+    /**
+     * 处理基本类型数组的各元素，无法处理时返回 false，由 {@link #applyValue} 逐个处理装箱后的元素
+     */
+    boolean applyPrimitives(RequestBuilder builder, Object values) throws IOException {
+        return false;
+    }
+
+    /**
+     * {@link #iterable()}、{@link #array()} 的元素处理完毕
+     */
+    void endValues(RequestBuilder builder) {
+    }
+
     // list执行
     final ParameterHandler<Iterable<T>> iterable() {
         return new ParameterHandler<Iterable<T>>() {
@@ -57,9 +86,11 @@ abstract class ParameterHandler<T> {
                     throws IOException {
                 if (values == null) return; // Skip null values.
 
+                ParameterHandler.this.beginValues(builder);
                 for (T value : values) {
-                    ParameterHandler.this.apply(builder, value);
+                    ParameterHandler.this.applyValue(builder, value);
                 }
+                ParameterHandler.this.endValues(builder);
             }
         };
     }
@@ -71,9 +102,13 @@ abstract class ParameterHandler<T> {
             void apply(RequestBuilder builder, @Nullable Object values) throws IOException {
                 if (values == null) return; // Skip null values.
 
-                for (int i = 0, size = Array.getLength(values); i < size; i++) {
-                    ParameterHandler.this.apply(builder, (T) Array.get(values, i));
+                ParameterHandler.this.beginValues(builder);
+                if (!ParameterHandler.this.applyPrimitives(builder, values)) {
+                    for (int i = 0, size = Array.getLength(values); i < size; i++) {
+                        ParameterHandler.this.applyValue(builder, (T) Array.get(values, i));
+                    }
                 }
+                ParameterHandler.this.endValues(builder);
             }
         };
     }
@@ -89,6 +124,45 @@ abstract class ParameterHandler<T> {
         }
     }
 
+    /**
+     * 通过{@link org.sheedon.mqtt.retrofit.mqtt.Qos}注解，设置本次发送消息的 qos
+     */
+    static final class Qos extends ParameterHandler<Integer> {
+        @Override
+        void apply(RequestBuilder builder, @Nullable Integer value) {
+            if (value == null) return; // Keep the method qos.
+            builder.setQos(value);
+        }
+    }
+
+    /**
+     * 通过{@link org.sheedon.mqtt.retrofit.mqtt.Retained}注解，设置本次发送的消息是否保留
+     */
+    static final class Retained extends ParameterHandler<Boolean> {
+        @Override
+        void apply(RequestBuilder builder, @Nullable Boolean value) {
+            if (value == null) return; // Keep the method retained flag.
+            builder.setRetained(value);
+        }
+    }
+
+    /**
+     * 通过{@link org.sheedon.mqtt.retrofit.mqtt.CallTimeout}注解，设置本次调用的响应超时时间
+     */
+    static final class Timeout extends ParameterHandler<Number> {
+        private final TimeUnit timeUnit;
+
+        Timeout(TimeUnit timeUnit) {
+            this.timeUnit = Objects.requireNonNull(timeUnit, "timeUnit == null");
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable Number value) {
+            if (value == null) return; // Keep the method timeout.
+            builder.setTimeout(value.longValue(), timeUnit);
+        }
+    }
+
     /**
      * 由{@link org.sheedon.mqtt.retrofit.mqtt.Path}的对应类型，来更换一下四项的字段
      * {@link org.sheedon.mqtt.retrofit.mqtt.TOPIC} 发送消息的主题
@@ -115,18 +189,86 @@ abstract class ParameterHandler<T> {
                 throw new IllegalArgumentException(
                         "Path parameter \"" + name + "\" value must not be null.");
             }
-            if (pathType == PathType.TOPIC) {
-                // 发送数据的主题
-                builder.addTopicPathParam(name, valueConverter.convert(value));
-            } else if (pathType == PathType.SUBSCRIBE) {
-                // 订阅的主题
-                builder.addSubscribeTopicPathParam(name, valueConverter.convert(value));
-            } else if (pathType == PathType.PAYLOAD) {
-                // 发送的数据
-                builder.addPathParam(name, valueConverter.convert(value));
-            } else if (pathType == PathType.KEYWORD) {
-                // 订阅关键字
-                builder.addKeywordPathParam(name, valueConverter.convert(value));
+            builder.setPathParam(pathType, name, valueConverter.convert(value));
+        }
+    }
+
+    /**
+     * 整数类型且未配置字符串转换器的 {@link org.sheedon.mqtt.retrofit.mqtt.Path}，
+     * 数值直接写入路径，不经过转换器，也不创建中间字符串
+     */
+    static final class NumericPath extends ParameterHandler<Number> {
+        private final String name;
+        private final int pathType;
+
+        NumericPath(String name, int pathType) {
+            this.name = Objects.requireNonNull(name, "name == null");
+            this.pathType = pathType;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable Number value) {
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "Path parameter \"" + name + "\" value must not be null.");
+            }
+            builder.setPathParam(pathType, name, value.longValue());
+        }
+    }
+
+    /**
+     * String 类型且未配置字符串转换器的 {@link org.sheedon.mqtt.retrofit.mqtt.Path}，不经过转换器
+     */
+    static final class StringPath extends ParameterHandler<String> {
+        private final String name;
+        private final int pathType;
+
+        StringPath(String name, int pathType) {
+            this.name = Objects.requireNonNull(name, "name == null");
+            this.pathType = pathType;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "Path parameter \"" + name + "\" value must not be null.");
+            }
+            builder.setPathParam(pathType, name, value);
+        }
+    }
+
+    /**
+     * 由{@link org.sheedon.mqtt.retrofit.mqtt.PathMap}的各项，按对应类型替换字段
+     *
+     * @param <T> 值类型
+     */
+    static final class PathMap<T> extends ParameterHandler<Map<String, T>> {
+        private final int pathType;
+        private final Converter<T, String> valueConverter;
+
+        PathMap(int pathType, Converter<T, String> valueConverter) {
+            this.pathType = pathType;
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable Map<String, T> value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Path map was null.");
+            }
+
+            for (Map.Entry<String, T> entry : value.entrySet()) {
+                String entryKey = entry.getKey();
+                if (entryKey == null) {
+                    throw new IllegalArgumentException("Path map contained null key.");
+                }
+                T entryValue = entry.getValue();
+                if (entryValue == null) {
+                    throw new IllegalArgumentException(
+                            "Path map contained null value for key '" + entryKey + "'.");
+                }
+                builder.setPathParam(pathType, entryKey, valueConverter.convert(entryValue));
             }
         }
     }
@@ -155,6 +297,116 @@ abstract class ParameterHandler<T> {
 
             builder.addFormField(name, fieldValue);
         }
+
+        @Override
+        void beginValues(RequestBuilder builder) {
+            builder.beginFormArray(name);
+        }
+
+        @Override
+        void applyValue(RequestBuilder builder, @Nullable T value) throws IOException {
+            if (value == null) return; // Skip null values.
+
+            String fieldValue = valueConverter.convert(value);
+            if (fieldValue == null) return; // Skip null converted values
+
+            builder.addFormArrayValue(name, fieldValue);
+        }
+
+        /**
+         * 元素按 {@link Object#toString()} 转换时，基本类型数组逐个元素直接写入表单，不装箱
+         */
+        @Override
+        boolean applyPrimitives(RequestBuilder builder, Object values) {
+            if (valueConverter != BuiltInConverters.ToStringConverter.INSTANCE) {
+                return false;
+            }
+            if (values instanceof int[]) {
+                for (int value : (int[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof long[]) {
+                for (long value : (long[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof double[]) {
+                for (double value : (double[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof float[]) {
+                for (float value : (float[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof short[]) {
+                for (short value : (short[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof byte[]) {
+                for (byte value : (byte[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof char[]) {
+                for (char value : (char[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else if (values instanceof boolean[]) {
+                for (boolean value : (boolean[]) values) builder.addFormArrayValue(name, String.valueOf(value));
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        void endValues(RequestBuilder builder) {
+            builder.endFormArray(name);
+        }
+    }
+
+    /**
+     * 请求数据配置的参数
+     * {@link org.sheedon.mqtt.retrofit.mqtt.FieldMap} 的各项逐个写入表单
+     *
+     * @param <T> 值类型
+     */
+    static final class FieldMap<T> extends ParameterHandler<Map<String, T>> {
+        private final Converter<T, String> valueConverter;
+
+        FieldMap(Converter<T, String> valueConverter) {
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, @Nullable Map<String, T> value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Field map was null.");
+            }
+
+            for (Map.Entry<String, T> entry : value.entrySet()) {
+                String entryKey = entry.getKey();
+                if (entryKey == null) {
+                    throw new IllegalArgumentException("Field map contained null key.");
+                }
+                T entryValue = entry.getValue();
+                if (entryValue == null) continue; // Skip null values.
+
+                String fieldValue = valueConverter.convert(entryValue);
+                if (fieldValue == null) continue; // Skip null converted values
+
+                builder.addFormField(entryKey, fieldValue);
+            }
+        }
+    }
+
+    /**
+     * 值类型为 {@code Object} 的 Map 参数，按值的运行时类型查找转换器，每种类型只查找一次
+     */
+    static final class RuntimeTypeConverter implements Converter<Object, String> {
+        private final Retrofit retrofit;
+        private final Annotation[] annotations;
+        private final Map<Class<?>, Converter<Object, String>> converters = new ConcurrentHashMap<>();
+
+        RuntimeTypeConverter(Retrofit retrofit, Annotation[] annotations) {
+            this.retrofit = retrofit;
+            this.annotations = annotations;
+        }
+
+        @Override
+        public String convert(Object value) throws IOException {
+            Class<?> type = value.getClass();
+            Converter<Object, String> converter = converters.get(type);
+            if (converter == null) {
+                converter = retrofit.stringConverter(type, annotations);
+                converters.put(type, converter);
+            }
+            return converter.convert(value);
+        }
     }
 
     /**
@@ -190,12 +442,15 @@ abstract class ParameterHandler<T> {
                 return;
             }
 
+            EventListener eventListener = builder.eventListener();
+            eventListener.bodyConvertStart();
             String body;
             try {
                 body = converter.convert(value);
             } catch (IOException e) {
                 throw new RuntimeException("Unable to convert " + value + " to RequestBody", e);
             }
+            eventListener.bodyConvertEnd(body == null ? 0 : body.length());
             builder.setBody(body);
         }
     }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务方法的解析缓存，包括注解解析结果和已查找到的转换器。
+ * <p>
+ * 由 {@link Retrofit#newBuilder()} 派生、且未改变转换器工厂的实例共用同一个缓存，
+ * 因此按租户、站点等创建的大量实例只需解析一次；基础主题等实例相关的配置在创建
+ * {@link RequestFactory} 时分别应用。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+final class ParseCache {
+
+    final Map<Retrofit.ConverterKey, Converter<?, ?>> converters = new ConcurrentHashMap<>();
+    private final Map<Method, RequestFactory.Builder> templates = new ConcurrentHashMap<>();
+
+    /**
+     * 获取 {@code method} 的解析结果，尚未解析时由 {@code retrofit} 解析
+     */
+    RequestFactory.Builder template(Retrofit retrofit, Method method) {
+        RequestFactory.Builder template = templates.get(method);
+        if (template == null) {
+            template = new RequestFactory.Builder(retrofit, method).parse();
+            RequestFactory.Builder previous = templates.putIfAbsent(method, template);
+            if (previous != null) {
+                template = previous;
+            }
+        }
+        return template;
+    }
+}
@@ -37,6 +37,7 @@ import org.sheedon.mqtt.Request;
 import org.sheedon.mqtt.RequestBody;
 import org.sheedon.mqtt.Subscribe;
 import org.sheedon.mqtt.SubscriptionType;
+import org.sheedon.mqtt.retrofit.mqtt.PathType;
 
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
@@ -55,37 +56,48 @@ public class RequestBuilder {
 
     private String topic;
     private String relativePayload;
-    private final int qos;
-    private final boolean retained;
+    private int qos;
+    private boolean retained;
 
     private final String charset;
     private final boolean autoEncode;
 
-    private final long timeout;
-    private final TimeUnit timeUnit;
+    private long timeout;
+    private TimeUnit timeUnit;
 
     private String subscribeTopic;
     private final int subscribeQos;
     private final boolean attachRecord;
     private final SubscriptionType subscriptionType;
 
-    private final String keyword;
+    private String keyword;
     private final Request.Builder requestBuilder;
     private final Subscribe.Builder subscribeBuilder;
     private @Nullable
     final FormBodyConverter formBuilder;
     private String body = null;
+    private String payload;
 
+    private @Nullable
+    SubscribeTopic[] subscribeTopics;
     private Subscribe subscribeBody;
     private RequestBody requestBody;
 
+    private EventListener eventListener = EventListener.NONE;
+
+    // 发送主题、订阅主题、有效载荷、关键字的路径模版，及本次调用的路径参数取值
+    private @Nullable
+    TopicTemplate topicTemplate, subscribeTopicTemplate, payloadTemplate, keywordTemplate;
+    private @Nullable
+    TopicTemplate.Values topicValues, subscribeTopicValues, payloadValues, keywordValues;
+
 
     public RequestBuilder(String topic, int qos, boolean retained,
                           long timeout, TimeUnit timeUnit, String relativePayload,
                           String subscribeTopic, int subscribeQos,
                           boolean attachRecord, SubscriptionType subscriptionType,
                           String keyword,
-                          String charset, boolean autoEncode, FormBodyConverter formBuilder) {
+                          String charset, boolean autoEncode, @Nullable FormBodyConverter formBuilder) {
         this.topic = topic;
         this.qos = qos < 0 || qos > 2 ? 0 : qos;
         this.retained = retained;
@@ -105,13 +117,96 @@ public class RequestBuilder {
         this.charset = charset;
         this.autoEncode = autoEncode;
 
-        this.formBuilder = formBuilder == null ? null : formBuilder.clone();
+        this.formBuilder = formBuilder;
 
         this.requestBuilder = new Request.Builder();
         this.subscribeBuilder = new Subscribe.Builder();
     }
 
 
+    /**
+     * 设置本次调用的事件监听器
+     */
+    void setEventListener(EventListener eventListener) {
+        this.eventListener = Objects.requireNonNull(eventListener, "eventListener == null");
+    }
+
+    /**
+     * 本次调用的事件监听器
+     */
+    EventListener eventListener() {
+        return eventListener;
+    }
+
+    /**
+     * 当前发送消息的主题，若未配置则返回订阅主题
+     */
+    @Nullable
+    String topic() {
+        if (TextUtils.isEmpty(topic) && subscribeTopic == null && subscribeTopics != null) {
+            return subscribeTopics[0].topic;
+        }
+        return TextUtils.isEmpty(topic) ? subscribeTopic : topic;
+    }
+
+    /**
+     * 替换路径参数后的订阅主题
+     */
+    @Nullable
+    String subscribeTopic() {
+        return subscribeTopic;
+    }
+
+    int subscribeQos() {
+        return subscribeQos;
+    }
+
+    @Nullable
+    SubscriptionType subscriptionType() {
+        return subscriptionType;
+    }
+
+    boolean attachRecord() {
+        return attachRecord;
+    }
+
+    /**
+     * 本次调用向 mqtt-server 订阅的主题，用于登记到 {@link SubscriptionRegistry}。
+     * 使用 {@link org.sheedon.mqtt.retrofit.mqtt.Body} 直接配置订阅对象时无法获知订阅主题，返回空数组。
+     */
+    SubscribeTopic[] liveTopics() {
+        if (subscribeBody != null) {
+            return new SubscribeTopic[0];
+        }
+        if (subscribeTopics != null) {
+            return subscribeTopics;
+        }
+        if (TextUtils.isEmpty(subscribeTopic)) {
+            return new SubscribeTopic[0];
+        }
+        return new SubscribeTopic[]{new SubscribeTopic(TopicTemplate.wildcardUnresolved(subscribeTopic),
+                subscribeQos, attachRecord, subscriptionType)};
+    }
+
+    /**
+     * 用于选择连接的路由主题。
+     * 订阅主题优先，以保证订阅以及请求响应的订阅主题落在拥有该主题的连接上，其次为发送消息主题，最后为关键字。
+     * 使用 {@link org.sheedon.mqtt.retrofit.mqtt.Body} 直接配置订阅对象时返回 null。
+     */
+    @Nullable
+    String routingTopic() {
+        if (subscribeBody != null) {
+            return null;
+        }
+        if (!TextUtils.isEmpty(subscribeTopic)) {
+            return subscribeTopic;
+        }
+        if (!TextUtils.isEmpty(topic)) {
+            return topic;
+        }
+        return keyword;
+    }
+
     /**
      * 通过 {@link org.sheedon.mqtt.retrofit.mqtt.Subject} 添加的主题
      *
@@ -120,68 +215,169 @@ public class RequestBuilder {
     void setRelativeTopic(String value) {
         Objects.requireNonNull(value, "topic == null");
         topic = value;
+        // 动态主题中的占位符同样由 @Path 替换
+        topicTemplate = TopicTemplate.compile(value);
+        topicValues = null;
     }
 
     /**
-     * 往 {@link org.sheedon.mqtt.retrofit.mqtt.TOPIC} 根据 {@link org.sheedon.mqtt.retrofit.mqtt.Path}
-     * 替换请求关键字段
+     * 由 {@link org.sheedon.mqtt.retrofit.mqtt.Qos @Qos} 设置本次发送消息的 qos
      *
-     * @param name  字段名
-     * @param value 字段值
+     * @param qos 0、1、2
      */
-    void addTopicPathParam(String name, String value) {
-        if (topic == null) {
-            // The relative URL is cleared when the first query parameter is set.
-            throw new AssertionError();
+    void setQos(int qos) {
+        if (qos < 0 || qos > 2) {
+            throw new IllegalArgumentException("@Qos must be 0, 1 or 2, but was " + qos + ".");
         }
-        topic = topic.replace("{" + name + "}", value);
+        this.qos = qos;
+    }
+
+    /**
+     * 由 {@link org.sheedon.mqtt.retrofit.mqtt.Retained @Retained} 设置本次发送的消息是否保留
+     */
+    void setRetained(boolean retained) {
+        this.retained = retained;
     }
 
     /**
-     * 往 {@link org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE} 根据
-     * {@link org.sheedon.mqtt.retrofit.mqtt.Path}
-     * 替换订阅关键字段
+     * 由 {@link org.sheedon.mqtt.retrofit.mqtt.CallTimeout @CallTimeout} 设置本次调用的响应超时时间
      *
-     * @param name  字段名
-     * @param value 字段值
+     * @param timeout  超时时长
+     * @param timeUnit 时间单位
+     */
+    void setTimeout(long timeout, TimeUnit timeUnit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("@CallTimeout must not be negative, but was " + timeout + ".");
+        }
+        this.timeout = timeout;
+        this.timeUnit = timeUnit;
+    }
+
+    /**
+     * 本次调用的响应超时时间，单位纳秒
+     */
+    long timeoutNanos() {
+        return timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * 设置请求工厂预编译的路径模版，没有占位符的位置为 null
+     */
+    void setPathTemplates(@Nullable TopicTemplate topicTemplate,
+                          @Nullable TopicTemplate subscribeTopicTemplate,
+                          @Nullable TopicTemplate payloadTemplate,
+                          @Nullable TopicTemplate keywordTemplate) {
+        this.topicTemplate = topicTemplate;
+        this.subscribeTopicTemplate = subscribeTopicTemplate;
+        this.payloadTemplate = payloadTemplate;
+        this.keywordTemplate = keywordTemplate;
+    }
+
+    /**
+     * 按 {@link org.sheedon.mqtt.retrofit.mqtt.PathType} 记录 {@link org.sheedon.mqtt.retrofit.mqtt.Path}
+     * 的字段值，在 {@link #renderPathParams()} 时统一替换
+     *
+     * @param pathType 替换位置
+     * @param name     字段名
+     * @param value    字段值
      */
-    void addSubscribeTopicPathParam(String name, String value) {
-        if (subscribeTopic == null) {
-            subscribeTopic = "";
+    void setPathParam(int pathType, String name, String value) {
+        TopicTemplate.Values values = pathValues(pathType);
+        if (values != null) {
+            values.set(name, value);
         }
-        subscribeTopic = subscribeTopic.replace("{" + name + "}", value);
     }
 
     /**
-     * 往 {@link org.sheedon.mqtt.retrofit.mqtt.PAYLOAD} 根据
-     * {@link org.sheedon.mqtt.retrofit.mqtt.Path}
-     * 替换有效载荷关键字段
+     * 以整数记录 {@link org.sheedon.mqtt.retrofit.mqtt.Path} 的字段值，替换时直接写入数字
      *
-     * @param name  字段名
-     * @param value 字段值
+     * @param pathType 替换位置
+     * @param name     字段名
+     * @param value    字段值
      */
-    void addPathParam(String name, String value) {
-        if (relativePayload == null) {
-            // The relative URL is cleared when the first query parameter is set.
-            relativePayload = "";
+    void setPathParam(int pathType, String name, long value) {
+        TopicTemplate.Values values = pathValues(pathType);
+        if (values != null) {
+            values.set(name, value);
         }
-        relativePayload = relativePayload.replace("{" + name + "}", value);
     }
 
     /**
-     * 往 {@link org.sheedon.mqtt.retrofit.mqtt.KEYWORD} 根据
-     * {@link org.sheedon.mqtt.retrofit.mqtt.Path}
-     * 替换关键字的关键字段
+     * 替换位置对应的本次调用取值，该位置没有占位符时返回 null
+     */
+    @Nullable
+    private TopicTemplate.Values pathValues(int pathType) {
+        switch (pathType) {
+            case PathType.TOPIC:
+                if (topicValues == null && topicTemplate != null) {
+                    topicValues = topicTemplate.newValues();
+                }
+                return topicValues;
+            case PathType.SUBSCRIBE:
+                if (subscribeTopicValues == null && subscribeTopicTemplate != null) {
+                    subscribeTopicValues = subscribeTopicTemplate.newValues();
+                }
+                return subscribeTopicValues;
+            case PathType.PAYLOAD:
+                if (payloadValues == null && payloadTemplate != null) {
+                    payloadValues = payloadTemplate.newValues();
+                }
+                return payloadValues;
+            case PathType.KEYWORD:
+                if (keywordValues == null && keywordTemplate != null) {
+                    keywordValues = keywordTemplate.newValues();
+                }
+                return keywordValues;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 所有参数处理完后，将记录的路径参数一次性写入发送主题、订阅主题、有效载荷和关键字
+     */
+    void renderPathParams() {
+        if (topicValues != null) {
+            topic = topicValues.render();
+        }
+        if (subscribeTopicValues != null) {
+            subscribeTopic = subscribeTopicValues.render();
+        }
+        if (payloadValues != null) {
+            relativePayload = payloadValues.render();
+        }
+        if (keywordValues != null) {
+            keyword = keywordValues.render();
+        }
+    }
+
+    /**
+     * 将订阅主题中未被 {@link org.sheedon.mqtt.retrofit.mqtt.Path} 替换的占位层级替换为 {@code +}
+     */
+    void wildcardSubscribeTopic() {
+        if (subscribeTopic != null) {
+            subscribeTopic = TopicTemplate.wildcardUnresolved(subscribeTopic);
+        }
+    }
+
+    /**
+     * 写入 {@link org.sheedon.mqtt.retrofit.mqtt.Correlated @Correlated} 生成的关联 ID，
+     * 替换发送主题和有效载荷中的 {@code {cid}}，并在 {@code field} 不为空时写入表单
      *
-     * @param name  字段名
-     * @param value 字段值
+     * @param id    关联 ID
+     * @param field 表单字段名
      */
-    void addKeywordPathParam(String name, String value) {
-        if (relativePayload == null) {
-            // The relative URL is cleared when the first query parameter is set.
-            relativePayload = "";
+    void setCorrelationId(String id, String field) {
+        String placeholder = org.sheedon.mqtt.retrofit.mqtt.Correlated.PLACEHOLDER;
+        if (topic != null) {
+            topic = topic.replace(placeholder, id);
+        }
+        if (relativePayload != null) {
+            relativePayload = relativePayload.replace(placeholder, id);
+        }
+        if (!TextUtils.isEmpty(field)) {
+            addFormField(field, id);
         }
-        relativePayload = relativePayload.replace("{" + name + "}", value);
     }
 
     /**
@@ -197,6 +393,42 @@ public class RequestBuilder {
         formBuilder.add(name, value);
     }
 
+    /**
+     * 开始添加 {@link Iterable}、数组类型的 {@link org.sheedon.mqtt.retrofit.mqtt.Field} 表单数据
+     */
+    void beginFormArray(String name) {
+        if (formBuilder != null) {
+            formBuilder.beginArray(name);
+        }
+    }
+
+    /**
+     * 添加数组表单数据的一个元素
+     */
+    void addFormArrayValue(String name, String value) {
+        if (formBuilder != null) {
+            formBuilder.addArrayValue(name, value);
+        }
+    }
+
+    /**
+     * 数组表单数据添加完毕
+     */
+    void endFormArray(String name) {
+        if (formBuilder != null) {
+            formBuilder.endArray(name);
+        }
+    }
+
+    /**
+     * 配置 {@link org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE_ALL} 声明的订阅主题组
+     *
+     * @param subscribeTopics 订阅主题组
+     */
+    void setSubscribeTopics(SubscribeTopic[] subscribeTopics) {
+        this.subscribeTopics = subscribeTopics;
+    }
+
     /**
      * 配置{@link org.sheedon.mqtt.retrofit.mqtt.Body}配置订阅配置
      *
@@ -262,7 +494,7 @@ public class RequestBuilder {
         // 设置编码格式
         String currentCharset = charset == null ? "" : charset;
         // 设置有效载荷
-        String payload = getRequestBody();
+        String payload = this.payload = getRequestBody();
 
         return requestBuilder
                 // 设置有效载荷
@@ -274,6 +506,17 @@ public class RequestBuilder {
 
     }
 
+    /**
+     * 将本次发送的消息转换为 {@link Outbox} 日志记录，需在 {@link #get()} 之后调用
+     */
+    Outbox.Record outboxRecord() {
+        // 通过 @Body RequestBody 直接设置的请求体，以其内容为准
+        String data = requestBody != null ? requestBody.data() : payload;
+        return new Outbox.Record(topic, qos, retained,
+                charset == null ? "" : charset, autoEncode,
+                data == null ? "" : data);
+    }
+
     /**
      * 构建得到Subscribe，核实订阅主题或关键字不能都为空
      *
@@ -284,6 +527,14 @@ public class RequestBuilder {
             return subscribeBody;
         }
 
+        // 多个订阅主题合并为一个订阅对象
+        if (subscribeTopics != null) {
+            for (SubscribeTopic subscribeTopic : subscribeTopics) {
+                subscribeTopic.addTo(subscribeBuilder, keyword);
+            }
+            return subscribeBuilder.build();
+        }
+
         if (subscribeTopic == null && keyword == null) {
             throw new IllegalArgumentException(
                     "if you need to configure subscription messages, " +
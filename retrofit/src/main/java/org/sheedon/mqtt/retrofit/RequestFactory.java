@@ -29,19 +29,30 @@
  */
 package org.sheedon.mqtt.retrofit;
 
+import android.text.TextUtils;
+
 import androidx.annotation.Nullable;
 
 import org.sheedon.mqtt.Request;
 import org.sheedon.mqtt.SubscriptionType;
+import org.sheedon.mqtt.retrofit.mqtt.AdaptiveTimeout;
 import org.sheedon.mqtt.retrofit.mqtt.KEYWORD;
 import org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE;
+import org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE_ALL;
 import org.sheedon.mqtt.retrofit.mqtt.Body;
 import org.sheedon.mqtt.retrofit.mqtt.CHARSET;
+import org.sheedon.mqtt.retrofit.mqtt.CallTimeout;
+import org.sheedon.mqtt.retrofit.mqtt.Correlated;
+import org.sheedon.mqtt.retrofit.mqtt.Durable;
 import org.sheedon.mqtt.retrofit.mqtt.Field;
+import org.sheedon.mqtt.retrofit.mqtt.FieldMap;
 import org.sheedon.mqtt.retrofit.mqtt.FormEncoded;
 import org.sheedon.mqtt.retrofit.mqtt.PAYLOAD;
 import org.sheedon.mqtt.retrofit.mqtt.Path;
+import org.sheedon.mqtt.retrofit.mqtt.PathMap;
 import org.sheedon.mqtt.retrofit.mqtt.PathType;
+import org.sheedon.mqtt.retrofit.mqtt.Qos;
+import org.sheedon.mqtt.retrofit.mqtt.Retained;
 import org.sheedon.mqtt.retrofit.mqtt.TIMEOUT;
 import org.sheedon.mqtt.retrofit.mqtt.TOPIC;
 import org.sheedon.mqtt.retrofit.mqtt.Subject;
@@ -49,8 +60,10 @@ import org.sheedon.mqtt.retrofit.mqtt.Subject;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import kotlin.coroutines.Continuation;
@@ -64,7 +77,7 @@ import kotlin.coroutines.Continuation;
  */
 final class RequestFactory {
     static RequestFactory parseAnnotations(Retrofit retrofit, Method method) {
-        return new Builder(retrofit, method).build();
+        return new RequestFactory(retrofit.parseCache.template(retrofit, method), retrofit);
     }
 
     private final Method method;
@@ -77,6 +90,8 @@ final class RequestFactory {
 
     private final long timeout;
     private final TimeUnit timeUnit;
+    private final @Nullable
+    LatencyEstimator latencyEstimator;
 
     private final String relativePayload;
 
@@ -87,42 +102,309 @@ final class RequestFactory {
     private final String keyword;
 
     private final String charset;
-    private final FormBodyConverter formBodyConverter;
+    // 表单数据转化者模板，每次请求由此创建新的构建者
+    private final @Nullable
+    FormBodyConverter formBodyTemplate;
     private final boolean autoEncode;
 
-    RequestFactory(Builder builder) {
-        method = builder.method;
-        parameterHandlers = builder.parameterHandlers;
-        isKotlinSuspendFunction = builder.isKotlinSuspendFunction;
-        formBodyConverter = builder.isFormEncoded ? builder.createFormBodyConverter() : null;
+    private final @Nullable
+    Outbox outbox;
+
+    // 发送主题、订阅主题、有效载荷、关键字中 @Path 占位符的预编译结果
+    private final @Nullable
+    TopicTemplate topicPathTemplate, subscribePathTemplate, payloadPathTemplate, keywordPathTemplate;
+
+    private final @Nullable
+    TopicTemplate subscribeTemplate;
+    // 方法声明的订阅主题，未替换的占位层级已替换为 '+'
+    private final SubscribeTopic[] subscribeTopics;
+    final boolean isSubscribeAll;
+
+    private final @Nullable
+    SubscriptionMultiplexer multiplexer;
+    private final SubscriptionRegistry subscriptionRegistry;
+    final boolean bodyOnlyResponses;
+
+    private final @Nullable
+    CorrelationEngine correlationEngine;
+    private final String replyTopic;
+    private final int replyIdSegment;
+    private final int replyQos;
+    private final String correlationField;
+
+    /**
+     * 由解析结果和 {@code retrofit} 创建请求工厂。
+     * <p>
+     * {@code template} 不含基础主题，可被 {@link Retrofit#newBuilder()} 派生的多个实例共用；
+     * 基础主题、默认超时时间、发件箱等与实例相关的配置在此处应用。
+     */
+    RequestFactory(Builder template, Retrofit retrofit) {
+        method = template.method;
+        parameterHandlers = template.parameterHandlers;
+        isKotlinSuspendFunction = template.isKotlinSuspendFunction;
+        formBodyTemplate = template.isFormEncoded ? retrofit.formBodyConverter() : null;
+
+        if (template.isDurable && retrofit.outbox == null) {
+            throw Utils.methodError(method, "@Durable requires Retrofit.Builder.outbox(File).");
+        }
+
+        String baseTopic = retrofit.baseTopic;
+        if (template.topic == null || template.topic.equals("")) {
+            topic = baseTopic;
+        } else if (!template.isReplace) {
+            topic = baseTopic + template.topic;
+        } else {
+            topic = template.topic;
+        }
+        qos = template.qos;
+        retained = template.retained;
+
+        if (template.gotTimeout) {
+            timeout = template.timeout;
+        } else {
+            timeout = retrofit.timeout <= 0 ? 3 : retrofit.timeout;
+        }
+        timeUnit = template.timeUnit;
+        AdaptiveTimeout adaptiveTimeout = template.adaptiveTimeout;
+        latencyEstimator = adaptiveTimeout == null ? null
+                : new LatencyEstimator(timeUnit.toNanos(timeout),
+                adaptiveTimeout.unit().toNanos(adaptiveTimeout.min()),
+                adaptiveTimeout.unit().toNanos(adaptiveTimeout.max()));
+
+        relativePayload = template.relativePayload;
+
+        if (template.subscribeTopic != null && template.subscribeTopic.equals("")) {
+            subscribeTopic = baseTopic;
+        } else if (template.subscribeTopic != null && !template.subscribeReplace) {
+            subscribeTopic = baseTopic + template.subscribeTopic;
+        } else {
+            subscribeTopic = template.subscribeTopic;
+        }
+        subscribeQos = template.subscribeQos;
+        attachRecord = template.attachRecord;
+        subscriptionType = template.subscriptionType;
+        keyword = template.keyword;
+
+        charset = template.charset;
+        autoEncode = template.autoEncode;
+
+        outbox = template.isDurable ? retrofit.outbox : null;
+        subscriptionRegistry = retrofit.subscriptionRegistry;
+        bodyOnlyResponses = retrofit.bodyOnlyResponses;
+
+        topicPathTemplate = TopicTemplate.compile(topic);
+        subscribePathTemplate = TopicTemplate.compile(subscribeTopic);
+        payloadPathTemplate = TopicTemplate.compile(relativePayload);
+        keywordPathTemplate = TopicTemplate.compile(keyword);
+        subscribeTemplate = subscribePathTemplate != null && subscribePathTemplate.hasLevels()
+                ? subscribePathTemplate : null;
+        SUBSCRIBE[] subscribeAllAnnotations = template.subscribeAllAnnotations;
+        isSubscribeAll = subscribeAllAnnotations != null;
+        if (subscribeAllAnnotations != null) {
+            subscribeTopics = new SubscribeTopic[subscribeAllAnnotations.length];
+            for (int i = 0; i < subscribeAllAnnotations.length; i++) {
+                SUBSCRIBE subscribe = subscribeAllAnnotations[i];
+                String value = subscribe.isSplice() ? subscribe.value() : baseTopic + subscribe.value();
+                subscribeTopics[i] = new SubscribeTopic(TopicTemplate.wildcardUnresolved(value),
+                        subscribe.qos(), subscribe.attachRecord(), subscribe.subscriptionType());
+            }
+        } else if (subscribeTopic != null) {
+            subscribeTopics = new SubscribeTopic[]{new SubscribeTopic(
+                    TopicTemplate.wildcardUnresolved(subscribeTopic),
+                    subscribeQos, attachRecord, subscriptionType)};
+        } else {
+            subscribeTopics = new SubscribeTopic[0];
+        }
+
+        // 只订阅、不发送消息且不按关键字匹配的方法才可复用订阅
+        multiplexer = !template.gotTopic && template.subscribeTopic != null && template.keyword == null
+                ? retrofit.multiplexer : null;
+
+        if (template.replyTopic != null) {
+            String[] segments = (template.replyReplace ? template.replyTopic : baseTopic + template.replyTopic)
+                    .split("/", -1);
+            correlationEngine = retrofit.correlationEngine();
+            replyIdSegment = replaceCorrelationId(segments);
+            if (replyIdSegment < 0) {
+                throw Utils.methodError(method,
+                        "@Correlated reply must contain exactly one {cid} as a whole topic level.");
+            }
+            replyTopic = TextUtils.join("/", segments);
+        } else {
+            correlationEngine = null;
+            replyIdSegment = 0;
+            replyTopic = null;
+        }
+        replyQos = template.replyQos;
+        correlationField = template.correlationField;
+    }
+
+    /**
+     * 将响应主题中 {@code {cid}} 所在的层级替换为单层通配符
+     *
+     * @return {@code {cid}} 所在的层级，没有或有多个 {@code {cid}} 时返回 -1
+     */
+    private static int replaceCorrelationId(String[] segments) {
+        int idSegment = -1;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].equals(Correlated.PLACEHOLDER)) {
+                if (idSegment >= 0) {
+                    return -1;
+                }
+                idSegment = i;
+                segments[i] = "+";
+            }
+        }
+        return idSegment;
+    }
+
+    /**
+     * {@link AdaptiveTimeout @AdaptiveTimeout} 方法的响应延迟估算，其余方法为 null
+     */
+    @Nullable
+    LatencyEstimator latencyEstimator() {
+        return latencyEstimator;
+    }
 
-        topic = builder.topic;
-        qos = builder.qos;
-        retained = builder.retained;
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Durable @Durable} 方法使用的离线发件箱，其余方法为 null
+     */
+    @Nullable
+    Outbox outbox() {
+        return outbox;
+    }
 
-        timeout = builder.timeout;
-        timeUnit = builder.timeUnit;
+    /**
+     * 订阅主题的预编译模版，订阅主题没有占位层级时为 null
+     */
+    @Nullable
+    TopicTemplate subscribeTemplate() {
+        return subscribeTemplate;
+    }
 
-        relativePayload = builder.relativePayload;
+    /**
+     * 方法通过 {@link org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE @SUBSCRIBE} 或
+     * {@link org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE_ALL @SUBSCRIBE_ALL} 声明的订阅主题
+     */
+    SubscribeTopic[] subscribeTopics() {
+        return subscribeTopics;
+    }
+
+    /**
+     * 可复用订阅时返回订阅复用器，否则为 null
+     */
+    @Nullable
+    SubscriptionMultiplexer multiplexer() {
+        return multiplexer;
+    }
 
-        subscribeTopic = builder.subscribeTopic;
-        subscribeQos = builder.subscribeQos;
-        attachRecord = builder.attachRecord;
-        subscriptionType = builder.subscriptionType;
-        keyword = builder.keyword;
+    /**
+     * 由转换结果创建成功响应，开启轻量模式时不保留原始响应
+     */
+    <T> Response<T> success(Converter<ResponseBody, T> converter, @Nullable T body,
+                            org.sheedon.mqtt.Response rawResponse) {
+        return Response.success(converter, body, rawResponse, subscribeTemplate, bodyOnlyResponses);
+    }
 
-        charset = builder.charset;
-        autoEncode = builder.autoEncode;
+    /**
+     * 登记存活订阅的登记表
+     */
+    SubscriptionRegistry subscriptionRegistry() {
+        return subscriptionRegistry;
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Correlated @Correlated} 方法使用的请求响应匹配器，其余方法为 null
+     */
+    @Nullable
+    CorrelationEngine correlationEngine() {
+        return correlationEngine;
+    }
+
+    /**
+     * 响应主题的订阅主题，关联 ID 所在层级为 {@code +}
+     */
+    String replyTopic() {
+        return replyTopic;
+    }
+
+    /**
+     * 关联 ID 在响应主题中的层级
+     */
+    int replyIdSegment() {
+        return replyIdSegment;
+    }
+
+    int replyQos() {
+        return replyQos;
+    }
+
+    /**
+     * 表单中写入关联 ID 的字段名，为空时不写入
+     */
+    String correlationField() {
+        return correlationField;
     }
 
     /**
      * 通过parameterHandlers将args转化成的请求数据以构建一个请求/订阅对象。
      *
-     * @param args 参数
+     * @param eventListener 事件监听器
+     * @param args          参数
      * @return 请求对象
      * @throws IOException
      */
-    Request create(Object[] args) throws IOException {
+    Request create(EventListener eventListener, Object[] args) throws IOException {
+        return create(applyArgs(eventListener, args, false));
+    }
+
+    /**
+     * 由已填充参数的请求构建者构建一个请求/订阅对象。
+     *
+     * @param requestBuilder 由 {@link #applyArgs} 得到的请求构建者
+     * @return 请求对象
+     */
+    Request create(RequestBuilder requestBuilder) {
+        Request request = requestBuilder.get().build();
+        requestBuilder.eventListener().requestBuildEnd(requestBuilder.topic());
+        return request;
+    }
+
+    /**
+     * 通过parameterHandlers将args转化成的请求数据以构建一个订阅对象。
+     *
+     * @param eventListener 事件监听器
+     * @param args          参数
+     * @return 订阅对象
+     * @throws IOException
+     */
+    org.sheedon.mqtt.Subscribe createSubscribe(EventListener eventListener, Object[] args) throws IOException {
+        return createSubscribe(applyArgs(eventListener, args, true));
+    }
+
+    /**
+     * 由已填充参数的请求构建者构建一个订阅对象。
+     *
+     * @param requestBuilder 由 {@link #applyArgs} 得到的请求构建者
+     * @return 订阅对象
+     */
+    org.sheedon.mqtt.Subscribe createSubscribe(RequestBuilder requestBuilder) {
+        org.sheedon.mqtt.Subscribe subscribe = requestBuilder.getSubscribe();
+        requestBuilder.eventListener().requestBuildEnd(requestBuilder.topic());
+        return subscribe;
+    }
+
+    /**
+     * 创建本次调用的请求构建者，并通过parameterHandlers将args填充到其中。
+     * 调用方可以在构建请求之前通过 {@link RequestBuilder#routingTopic()} 得知本次调用的路由主题。
+     *
+     * @param eventListener 事件监听器
+     * @param args          参数
+     * @param isSubscribe   是否用于构建订阅对象
+     * @return 请求构建者
+     * @throws IOException
+     */
+    RequestBuilder applyArgs(EventListener eventListener, Object[] args, boolean isSubscribe) throws IOException {
         ParameterHandler<Object>[] handlers = (ParameterHandler<Object>[]) parameterHandlers;
 
         int argumentCount = args.length;
@@ -135,13 +417,16 @@ final class RequestFactory {
                             + ")");
         }
 
-        RequestBuilder requestBuilder =
-                new RequestBuilder(topic, qos, retained,
-                        timeout, timeUnit, relativePayload,
-                        subscribeTopic, subscribeQos, attachRecord,
-                        subscriptionType, keyword, charset, autoEncode, formBodyConverter);
+        eventListener.requestBuildStart();
+        RequestBuilder requestBuilder = newRequestBuilder(eventListener);
 
         if (isKotlinSuspendFunction) {
+            if (isSubscribe) {
+                throw new IllegalArgumentException(
+                        "Subscribe ("
+                                + Arrays.toString(args)
+                                + ") doesn't use suspend ");
+            }
             // The Continuation is the last parameter and the handlers array contains null at that index.
             argumentCount--;
         }
@@ -149,52 +434,49 @@ final class RequestFactory {
         for (int p = 0; p < argumentCount; p++) {
             handlers[p].apply(requestBuilder, args[p]);
         }
-
-        return requestBuilder.get().build();
+        requestBuilder.renderPathParams();
+        if (subscribeTemplate != null) {
+            requestBuilder.wildcardSubscribeTopic();
+        }
+        return requestBuilder;
     }
 
     /**
-     * 通过parameterHandlers将args转化成的请求数据以构建一个订阅对象。
-     *
-     * @param args 参数
-     * @return 订阅对象
-     * @throws IOException
+     * 创建一个本次调用使用的请求构建者
      */
-    org.sheedon.mqtt.Subscribe createSubscribe(Object[] args) throws IOException {
-        ParameterHandler<Object>[] handlers = (ParameterHandler<Object>[]) parameterHandlers;
-
-        int argumentCount = args.length;
-        if (argumentCount != handlers.length) {
-            throw new IllegalArgumentException(
-                    "Argument count ("
-                            + argumentCount
-                            + ") doesn't match expected count ("
-                            + handlers.length
-                            + ")");
-        }
-
+    private RequestBuilder newRequestBuilder(EventListener eventListener) {
         RequestBuilder requestBuilder =
                 new RequestBuilder(topic, qos, retained,
                         timeout, timeUnit, relativePayload,
                         subscribeTopic, subscribeQos, attachRecord,
-                        subscriptionType, keyword, charset, autoEncode, formBodyConverter);
-
-        if (isKotlinSuspendFunction) {
-            // The Continuation is the last parameter and the handlers array contains null at that index.
-            throw new IllegalArgumentException(
-                    "Subscribe ("
-                            + Arrays.toString(args)
-                            + ") doesn't use suspend ");
+                        subscriptionType, keyword, charset, autoEncode,
+                        formBodyTemplate == null ? null : formBodyTemplate.newBuilder());
+        requestBuilder.setEventListener(eventListener);
+        if (latencyEstimator != null) {
+            requestBuilder.setTimeout(latencyEstimator.timeoutNanos(), TimeUnit.NANOSECONDS);
         }
-
-        for (int p = 0; p < argumentCount; p++) {
-            handlers[p].apply(requestBuilder, args[p]);
+        requestBuilder.setPathTemplates(topicPathTemplate, subscribePathTemplate,
+                payloadPathTemplate, keywordPathTemplate);
+        if (isSubscribeAll) {
+            requestBuilder.setSubscribeTopics(subscribeTopics);
         }
+        return requestBuilder;
+    }
 
-        return requestBuilder.getSubscribe();
+    /**
+     * 该请求工厂对应的服务方法
+     */
+    Method method() {
+        return method;
     }
 
 
+    /**
+     * 解析服务方法的注解和参数。
+     * <p>
+     * 解析结果不包含基础主题等实例相关的配置，由 {@link ParseCache} 缓存，
+     * 并在 {@link RequestFactory#RequestFactory(Builder, Retrofit)} 中与具体实例结合。
+     */
     static final class Builder {
 
         final Retrofit retrofit;
@@ -207,12 +489,28 @@ final class RequestFactory {
         boolean isReplace;
 
         boolean gotSubject;
+        boolean gotTopic;
+        boolean isDurable;
+
+        @Nullable
+        SUBSCRIBE[] subscribeAllAnnotations;
+
+        String replyTopic;
+        boolean replyReplace;
+        int replyQos;
+        String correlationField = "";
+
+        @Nullable
+        FormBodyConverter formBodyConverter;
 
         int qos = 0;
         boolean retained = false;
 
+        boolean gotTimeout;
         long timeout;
         TimeUnit timeUnit = TimeUnit.SECONDS;
+        @Nullable
+        AdaptiveTimeout adaptiveTimeout;
 
         String relativePayload = "";
         boolean gotPayload;
@@ -230,6 +528,9 @@ final class RequestFactory {
 
         boolean gotQuery;
         boolean gotBody;
+        boolean gotQos;
+        boolean gotRetained;
+        boolean gotCallTimeout;
         boolean isFormEncoded;
         @Nullable
         ParameterHandler<?>[] parameterHandlers;
@@ -241,11 +542,10 @@ final class RequestFactory {
             this.methodAnnotations = method.getAnnotations();
             this.parameterTypes = method.getGenericParameterTypes();
             this.parameterAnnotationsArray = method.getParameterAnnotations();
-            this.timeout = retrofit.timeout <= 0 ? 3 : retrofit.timeout;
         }
 
 
-        RequestFactory build() {
+        Builder parse() {
             for (Annotation annotation : methodAnnotations) {
                 parseMethodAnnotation(annotation);
             }
@@ -257,26 +557,45 @@ final class RequestFactory {
                         parseParameter(p, parameterTypes[p], parameterAnnotationsArray[p], p == lastParameter);
             }
 
-            String baseTopic = retrofit.baseTopic;
-            if (topic == null || topic.equals("")) {
-                topic = baseTopic;
-            } else if (!isReplace) {
-                topic = baseTopic + topic;
+            if (adaptiveTimeout != null
+                    && (adaptiveTimeout.min() <= 0 || adaptiveTimeout.max() < adaptiveTimeout.min())) {
+                throw Utils.methodError(method,
+                        "@AdaptiveTimeout requires 0 < min <= max, but was min=%s, max=%s.",
+                        adaptiveTimeout.min(), adaptiveTimeout.max());
             }
 
-            if (subscribeTopic != null && subscribeTopic.equals("")) {
-                subscribeTopic = baseTopic;
-            } else if (subscribeTopic != null && !subscribeReplace) {
-                subscribeTopic = baseTopic + subscribeTopic;
+            if (isDurable && !gotTopic) {
+                throw Utils.methodError(method, "@Durable can only be used with @TOPIC.");
             }
 
+            if (replyTopic != null) {
+                if (!gotTopic) {
+                    throw Utils.methodError(method, "@Correlated can only be used with @TOPIC.");
+                }
+                if (subscribeTopic != null || keyword != null) {
+                    throw Utils.methodError(method,
+                            "@Correlated cannot be used with @SUBSCRIBE or @KEYWORD.");
+                }
+                validateReplyTopic(replyTopic);
+            }
+
+            if (subscribeAllAnnotations != null) {
+                if (subscribeTopic != null || gotTopic) {
+                    throw Utils.methodError(method,
+                            "@SUBSCRIBE_ALL cannot be used with @SUBSCRIBE or @TOPIC.");
+                }
+                if (subscribeAllAnnotations.length == 0) {
+                    throw Utils.methodError(method, "@SUBSCRIBE_ALL requires at least one @SUBSCRIBE.");
+                }
+            }
 
-            return new RequestFactory(this);
+            return this;
         }
 
         //解析方法注解
         private void parseMethodAnnotation(Annotation annotation) {
             if (annotation instanceof TOPIC) {
+                gotTopic = true;
                 topic = ((TOPIC) annotation).value();
                 qos = ((TOPIC) annotation).qos();
                 retained = ((TOPIC) annotation).retained();
@@ -288,8 +607,11 @@ final class RequestFactory {
                 charset = ((CHARSET) annotation).value();
                 autoEncode = ((CHARSET) annotation).autoEncode();
             } else if (annotation instanceof TIMEOUT) {
+                gotTimeout = true;
                 timeout = ((TIMEOUT) annotation).value();
                 timeUnit = ((TIMEOUT) annotation).unit();
+            } else if (annotation instanceof AdaptiveTimeout) {
+                adaptiveTimeout = (AdaptiveTimeout) annotation;
             } else if (annotation instanceof SUBSCRIBE) {
                 subscribeTopic = ((SUBSCRIBE) annotation).value();
                 subscribeReplace = ((SUBSCRIBE) annotation).isSplice();
@@ -300,6 +622,34 @@ final class RequestFactory {
                 isFormEncoded = true;
             } else if (annotation instanceof KEYWORD) {
                 keyword = ((KEYWORD) annotation).value();
+            } else if (annotation instanceof Durable) {
+                isDurable = true;
+            } else if (annotation instanceof SUBSCRIBE_ALL) {
+                subscribeAllAnnotations = ((SUBSCRIBE_ALL) annotation).value();
+            } else if (annotation instanceof Correlated) {
+                replyTopic = ((Correlated) annotation).reply();
+                replyReplace = ((Correlated) annotation).isSplice();
+                replyQos = ((Correlated) annotation).qos();
+                correlationField = ((Correlated) annotation).field();
+            }
+        }
+
+        /**
+         * 校验响应主题中 {@code {cid}} 独占一个层级且只出现一次
+         */
+        private void validateReplyTopic(String reply) {
+            int count = 0;
+            for (String segment : reply.split("/", -1)) {
+                if (segment.equals(Correlated.PLACEHOLDER)) {
+                    count++;
+                }
+            }
+            if (count > 1) {
+                throw Utils.methodError(method, "@Correlated reply contains more than one {cid}.");
+            }
+            if (count == 0) {
+                throw Utils.methodError(method,
+                        "@Correlated reply must contain {cid} as a whole topic level: %s", reply);
             }
         }
 
@@ -372,7 +722,31 @@ final class RequestFactory {
                 String name = path.value();
                 int pathType = path.type();
 
+                // 集合、数组的各元素转换后以 ',' 连接
+                Class<?> rawParameterType = Utils.getRawType(type);
+                if (Iterable.class.isAssignableFrom(rawParameterType)) {
+                    Converter<?, String> converter = retrofit.stringConverter(
+                            iterableElementType(p, type, rawParameterType), annotations);
+                    return new ParameterHandler.Path<>(name, pathType,
+                            new BuiltInConverters.IterableJoiningConverter<>(converter));
+                } else if (rawParameterType.isArray()) {
+                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    Converter<?, String> converter =
+                            retrofit.stringConverter(arrayComponentType, annotations);
+                    return new ParameterHandler.Path<>(name, pathType,
+                            new BuiltInConverters.ArrayJoiningConverter<>(converter));
+                }
                 Converter<?, String> converter = retrofit.stringConverter(type, annotations);
+                if (converter == BuiltInConverters.ToStringConverter.INSTANCE) {
+                    // 未配置字符串转换器时，整数、字符串直接写入路径
+                    Class<?> boxedType = boxIfPrimitive(rawParameterType);
+                    if (boxedType == Integer.class || boxedType == Long.class
+                            || boxedType == Short.class || boxedType == Byte.class) {
+                        return new ParameterHandler.NumericPath(name, pathType);
+                    } else if (boxedType == String.class) {
+                        return new ParameterHandler.StringPath(name, pathType);
+                    }
+                }
                 return new ParameterHandler.Path<>(name, pathType, converter);
 
             } else if (annotation instanceof Field) {
@@ -389,30 +763,84 @@ final class RequestFactory {
                 Field field = (Field) annotation;
                 String name = field.value();
 
-//                Class<?> rawParameterType = Utils.getRawType(type);
+                Class<?> rawParameterType = Utils.getRawType(type);
                 gotQuery = true;
-//                if (Iterable.class.isAssignableFrom(rawParameterType)) {
-//                    if (!(type instanceof ParameterizedType)) {
-//                        throw Utils.parameterError(method, p, rawParameterType.getSimpleName()
-//                                + " must include generic type (e.g., "
-//                                + rawParameterType.getSimpleName()
-//                                + "<String>)");
-//                    }
-//                    ParameterizedType parameterizedType = (ParameterizedType) type;
-//                    Type iterableType = Utils.getParameterUpperBound(0, parameterizedType);
-//                    Converter<?, String> converter =
-//                            retrofit.stringConverter(iterableType, annotations);
-//                    return new ParameterHandler.Field<>(name, converter).iterable();
-//                } else if (rawParameterType.isArray()) {
-//                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
-//                    Converter<?, String> converter =
-//                            retrofit.stringConverter(arrayComponentType, annotations);
-//                    return new ParameterHandler.Field<>(name, converter).array();
-//                } else {
-                Converter<?, String> converter =
-                        retrofit.stringConverter(type, annotations);
+                if (Iterable.class.isAssignableFrom(rawParameterType)) {
+                    Type elementType = iterableElementType(p, type, rawParameterType);
+                    if (formBodyConverter().expandArray(elementType)) {
+                        Converter<?, String> converter = retrofit.stringConverter(elementType, annotations);
+                        return new ParameterHandler.Field<>(name, converter).iterable();
+                    }
+                } else if (rawParameterType.isArray()
+                        && formBodyConverter().expandArray(rawParameterType.getComponentType())) {
+                    Class<?> arrayComponentType = boxIfPrimitive(rawParameterType.getComponentType());
+                    Converter<?, String> converter =
+                            retrofit.stringConverter(arrayComponentType, annotations);
+                    return new ParameterHandler.Field<>(name, converter).array();
+                }
+                // 单个值，或由表单转化者整体转换的集合、数组
+                Converter<?, String> converter = retrofit.stringConverter(type, annotations);
                 return new ParameterHandler.Field<>(name, converter);
-//                }
+
+            } else if (annotation instanceof PathMap) {
+                PathMap pathMap = (PathMap) annotation;
+                if (pathMap.type() == PathType.TOPIC && gotSubject) {
+                    throw Utils.parameterError(method, p, "@PathMap parameters may not be used with @Theme.");
+                }
+                if (pathMap.type() == PathType.PAYLOAD && gotQuery) {
+                    throw Utils.parameterError(method, p, "A @PathMap parameter must not come after a @Field.");
+                }
+
+                Type valueType = mapValueType(p, type, "@PathMap");
+                return new ParameterHandler.PathMap<>(pathMap.type(), mapValueConverter(valueType, annotations));
+
+            } else if (annotation instanceof FieldMap) {
+                if (gotPayload) {
+                    throw Utils.parameterError(method, p, "@FieldMap parameters cannot be used with @PAYLOAD.");
+                }
+                if (gotBody) {
+                    throw Utils.parameterError(method, p, "@FieldMap parameters may not be used with @Body.");
+                }
+                if (!isFormEncoded) {
+                    throw Utils.parameterError(method, p, "@FieldMap parameters may be used with @FormEncoded.");
+                }
+
+                Type valueType = mapValueType(p, type, "@FieldMap");
+                gotQuery = true;
+                return new ParameterHandler.FieldMap<>(mapValueConverter(valueType, annotations));
+
+            } else if (annotation instanceof Qos) {
+                if (gotQos) {
+                    throw Utils.parameterError(method, p, "Multiple @Qos parameters found.");
+                }
+                Class<?> boxedType = boxIfPrimitive(Utils.getRawType(type));
+                if (boxedType != Integer.class) {
+                    throw Utils.parameterError(method, p, "@Qos must be int or Integer type.");
+                }
+                gotQos = true;
+                return new ParameterHandler.Qos();
+
+            } else if (annotation instanceof Retained) {
+                if (gotRetained) {
+                    throw Utils.parameterError(method, p, "Multiple @Retained parameters found.");
+                }
+                Class<?> boxedType = boxIfPrimitive(Utils.getRawType(type));
+                if (boxedType != Boolean.class) {
+                    throw Utils.parameterError(method, p, "@Retained must be boolean or Boolean type.");
+                }
+                gotRetained = true;
+                return new ParameterHandler.Retained();
+
+            } else if (annotation instanceof CallTimeout) {
+                if (gotCallTimeout) {
+                    throw Utils.parameterError(method, p, "Multiple @CallTimeout parameters found.");
+                }
+                Class<?> boxedType = boxIfPrimitive(Utils.getRawType(type));
+                if (boxedType != Long.class && boxedType != Integer.class) {
+                    throw Utils.parameterError(method, p, "@CallTimeout must be long or int type.");
+                }
+                gotCallTimeout = true;
+                return new ParameterHandler.Timeout(((CallTimeout) annotation).unit());
 
             } else if (annotation instanceof Body) {
                 if (gotPayload) {
@@ -440,10 +868,59 @@ final class RequestFactory {
         }
 
         /**
-         * 创建一个表单数据转换器
+         * Map 类型参数的值类型，键必须为 String
+         */
+        private Type mapValueType(int p, Type type, String annotationName) {
+            Class<?> rawParameterType = Utils.getRawType(type);
+            if (!Map.class.isAssignableFrom(rawParameterType)) {
+                throw Utils.parameterError(method, p, annotationName + " parameter type must be Map.");
+            }
+            Type mapType = Utils.getSupertype(type, rawParameterType, Map.class);
+            if (!(mapType instanceof ParameterizedType)) {
+                throw Utils.parameterError(
+                        method, p, "Map must include generic types (e.g., Map<String, String>)");
+            }
+            ParameterizedType parameterizedType = (ParameterizedType) mapType;
+            Type keyType = Utils.getParameterUpperBound(0, parameterizedType);
+            if (String.class != keyType) {
+                throw Utils.parameterError(
+                        method, p, annotationName + " keys must be of type String: " + keyType);
+            }
+            return Utils.getParameterUpperBound(1, parameterizedType);
+        }
+
+        /**
+         * Map 参数的值转换器，值类型为 Object 时按运行时类型查找
+         */
+        private Converter<?, String> mapValueConverter(Type valueType, Annotation[] annotations) {
+            if (valueType == Object.class) {
+                return new ParameterHandler.RuntimeTypeConverter(retrofit, annotations);
+            }
+            return retrofit.stringConverter(valueType, annotations);
+        }
+
+        /**
+         * 表单数据转化者，仅用于解析时查询 {@link FormBodyConverter#expandArray(Type)}
          */
-        private FormBodyConverter createFormBodyConverter() {
-            return retrofit.formBodyConverter();
+        private FormBodyConverter formBodyConverter() {
+            FormBodyConverter converter = formBodyConverter;
+            if (converter == null) {
+                converter = formBodyConverter = retrofit.formBodyConverter();
+            }
+            return converter;
+        }
+
+        /**
+         * {@link Iterable} 类型参数的元素类型，必须声明泛型参数
+         */
+        private Type iterableElementType(int p, Type type, Class<?> rawParameterType) {
+            if (!(type instanceof ParameterizedType)) {
+                throw Utils.parameterError(method, p, rawParameterType.getSimpleName()
+                        + " must include generic type (e.g., "
+                        + rawParameterType.getSimpleName()
+                        + "<String>)");
+            }
+            return Utils.getParameterUpperBound(0, (ParameterizedType) type);
         }
 
         private void validateResolvableType(int p, Type type) {
@@ -35,11 +35,19 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe;
 import org.sheedon.mqtt.ResponseBody;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 
+import kotlin.Unit;
+
 
 /**
  * 反馈内容
+ * <p>
+ * 通过 {@link Retrofit.Builder#bodyOnlyResponses(boolean)} 开启轻量模式后，转换完成的响应只保留转换结果与消息主题，
+ * 不再引用原始响应（及其中的消息载荷），{@link #raw()} 返回 null；
+ * 未使用路径参数的 {@code Void}、{@code Unit} 响应共用同一个实例，{@link #topic()} 返回 ""。
  *
  * @Author: sheedon
  * @Email: sheedonsun@163.com
@@ -86,6 +94,53 @@ public final class Response<T> {
         return new Response<>(rawResponse, body, null);
     }
 
+    /**
+     * Create a successful response whose {@link #pathParams()} are extracted from the topic of
+     * {@code rawResponse} with {@code template}.
+     */
+    static <T> Response<T> success(@Nullable T body, org.sheedon.mqtt.Response rawResponse,
+                                   @Nullable TopicTemplate template) {
+        Objects.requireNonNull(rawResponse, "rawResponse == null");
+        Response<T> response = new Response<>(rawResponse, body, null);
+        response.template = template;
+        return response;
+    }
+
+    /**
+     * 由转换器 {@code converter} 的转换结果创建成功响应，{@code bodyOnly} 为 true 时不保留原始响应
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Response<T> success(Converter<ResponseBody, T> converter, @Nullable T body,
+                                   org.sheedon.mqtt.Response rawResponse,
+                                   @Nullable TopicTemplate template, boolean bodyOnly) {
+        if (!bodyOnly) {
+            return success(body, rawResponse, template);
+        }
+        if (template == null) {
+            if (converter == BuiltInConverters.VoidResponseBodyConverter.INSTANCE) {
+                return (Response<T>) VOID;
+            }
+            if (converter == BuiltInConverters.UnitResponseBodyConverter.INSTANCE) {
+                return (Response<T>) UNIT;
+            }
+        }
+        ResponseBody rawBody = rawResponse.getBody();
+        String topic = rawBody != null ? rawBody.getTopic() : null;
+        Response<T> response = new Response<>(body, topic == null ? "" : topic);
+        response.template = template;
+        return response;
+    }
+
+    /**
+     * 以 {@code source} 的原始响应（轻量模式下为主题）创建内容为 {@code body} 的成功响应
+     */
+    static <T> Response<T> success(@Nullable T body, Response<?> source) {
+        if (source.rawResponse != null) {
+            return new Response<>(source.rawResponse, body, null);
+        }
+        return new Response<>(body, source.topic());
+    }
+
     /**
      * Create a synthetic error response with {@code body} as the error body.
      */
@@ -106,21 +161,45 @@ public final class Response<T> {
                         new ResponseBody(topic, new MqttMessage())));
     }
 
-    private final org.sheedon.mqtt.Response rawResponse;
+    // 轻量模式下共用的 Void、Unit 响应
+    private static final Response<Void> VOID = new Response<>(null, "");
+    private static final Response<Unit> UNIT = new Response<>(Unit.INSTANCE, "");
+
+    private final @Nullable
+    org.sheedon.mqtt.Response rawResponse;
     private final T body;
     private final org.sheedon.mqtt.Response errorBody;
+    // 轻量模式下保留的消息主题
+    private final @Nullable
+    String topic;
+    private final boolean successful;
+    private @Nullable
+    TopicTemplate template;
+    private @Nullable
+    Map<String, String> pathParams;
 
     private Response(org.sheedon.mqtt.Response rawResponse, @Nullable T body,
                      @Nullable org.sheedon.mqtt.Response errorBody) {
         this.rawResponse = rawResponse;
         this.body = body;
         this.errorBody = errorBody;
+        this.topic = null;
+        this.successful = rawResponse != null;
+    }
+
+    private Response(@Nullable T body, String topic) {
+        this.rawResponse = null;
+        this.body = body;
+        this.errorBody = null;
+        this.topic = topic;
+        this.successful = true;
     }
 
     /**
-     * The raw response from the MQTT client.
+     * The raw response from the MQTT client, or null for a body-only response.
      */
-    public org.sheedon.mqtt.Response raw() {
+    public @Nullable
+    org.sheedon.mqtt.Response raw() {
         return rawResponse;
     }
 
@@ -128,6 +207,9 @@ public final class Response<T> {
      * MQTT status backTopic or "" if unknown.
      */
     public String topic() {
+        if (topic != null) {
+            return topic;
+        }
         if (rawResponse != null && rawResponse.getBody() != null) {
             return rawResponse.getBody().getTopic();
         }
@@ -139,10 +221,25 @@ public final class Response<T> {
 
 
     /**
-     * Returns true if rawResponse is not null.
+     * 按订阅主题中的 {@code {name}} 从消息主题中取出的路径参数。
+     * <p>
+     * 例如订阅 {@code @SUBSCRIBE("device/{id}/state")} 收到主题为 "device/42/state" 的消息时，
+     * 返回 {"id": "42"}；订阅主题没有占位层级时返回空表。
+     */
+    public Map<String, String> pathParams() {
+        Map<String, String> pathParams = this.pathParams;
+        if (pathParams == null) {
+            pathParams = template == null ? Collections.emptyMap() : template.extract(topic());
+            this.pathParams = pathParams;
+        }
+        return pathParams;
+    }
+
+    /**
+     * Returns true if rawResponse is not null, or this is a body-only successful response.
      */
     public boolean isSuccessful() {
-        return rawResponse != null;
+        return successful;
     }
 
     /**
@@ -164,6 +261,7 @@ public final class Response<T> {
     public String toString() {
         return "Response{" +
                 "rawResponse=" + rawResponse +
+                ", topic=" + topic() +
                 ", body=" + body +
                 ", errorBody=" + errorBody +
                 '}';
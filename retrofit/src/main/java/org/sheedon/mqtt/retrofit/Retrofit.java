@@ -31,13 +31,17 @@ package org.sheedon.mqtt.retrofit;
 
 import androidx.annotation.Nullable;
 
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
 import org.sheedon.mqtt.CallFactory;
 import org.sheedon.mqtt.ObservableFactory;
 import org.sheedon.mqtt.OkMqttClient;
 import org.sheedon.mqtt.RequestBody;
 import org.sheedon.mqtt.ResponseBody;
 import org.sheedon.mqtt.Subscribe;
+import org.sheedon.mqtt.SubscribeBack;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -45,11 +49,22 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Collections.unmodifiableList;
 
@@ -74,10 +89,29 @@ import static java.util.Collections.unmodifiableList;
  * @Date: 2020/2/22 12:25
  */
 public class Retrofit {
+
+    /**
+     * {@link #subscribeAll(Class[])} 中每个 SUBSCRIBE 报文默认包含的订阅主题上限
+     */
+    public static final int DEFAULT_TOPICS_PER_SUBSCRIBE = 50;
+
     private final Map<Method, ServiceMethod<?>> serviceMethodCache = new ConcurrentHashMap<>();
+    // 已查找到的转换器，同一 Retrofit 的所有方法及共用解析缓存的派生实例共用
+    private final Map<ConverterKey, Converter<?, ?>> converterCache;
+    private volatile @Nullable
+    ScheduledExecutorService scheduler;
+    private volatile @Nullable
+    Executor batchExecutor;
+    private volatile @Nullable
+    CorrelationEngine correlationEngine;
+    private volatile @Nullable
+    DeadlineWheel deadlineWheel;
 
     final CallFactory callFactory;
     final ObservableFactory observableFactory;
+    final ClientRouter clientRouter;
+    final @Nullable
+    List<OkMqttClient> clients;
     final String baseTopic;
     final List<Converter.Factory> converterFactories;
     final int defaultConverterFactoriesSize;
@@ -87,18 +121,33 @@ public class Retrofit {
     Executor callbackExecutor;
     final boolean validateEagerly;
     final int timeout;
+    final EventListener.Factory eventListenerFactory;
+    final @Nullable
+    Outbox outbox;
+    final @Nullable
+    SubscriptionMultiplexer multiplexer;
+    final long unsubscribeDelayMillis;
+    final boolean bodyOnlyResponses;
+    final SubscriptionRegistry subscriptionRegistry = new SubscriptionRegistry();
+    final ParseCache parseCache;
 
     Retrofit(CallFactory callFactory,
              ObservableFactory observableFactory,
+             ClientRouter clientRouter,
+             @Nullable List<OkMqttClient> clients,
              String baseTopic,
              List<Converter.Factory> converterFactories,
              int defaultConverterFactoriesSize,
              List<CallAdapter.Factory> adapterFactories,
              int defaultCallAdapterFactoriesSize,
              @Nullable Executor callbackExecutor, boolean validateEagerly,
-             int defaultTimeout) {
+             int defaultTimeout, EventListener.Factory eventListenerFactory,
+             @Nullable Outbox outbox, boolean multiplexSubscriptions,
+             long unsubscribeDelayMillis, boolean bodyOnlyResponses, ParseCache parseCache) {
         this.callFactory = callFactory;
         this.observableFactory = observableFactory;
+        this.clientRouter = clientRouter;
+        this.clients = clients;
         this.baseTopic = baseTopic;
         this.converterFactories = converterFactories;
         this.defaultConverterFactoriesSize = defaultConverterFactoriesSize;
@@ -107,7 +156,16 @@ public class Retrofit {
         this.callbackExecutor = callbackExecutor;
         this.validateEagerly = validateEagerly;
         this.timeout = defaultTimeout;
-
+        this.eventListenerFactory = eventListenerFactory;
+        this.outbox = outbox;
+        this.unsubscribeDelayMillis = unsubscribeDelayMillis;
+        this.bodyOnlyResponses = bodyOnlyResponses;
+        this.parseCache = parseCache;
+        this.converterCache = parseCache.converters;
+        this.multiplexer = multiplexSubscriptions || unsubscribeDelayMillis > 0
+                ? new SubscriptionMultiplexer(clientRouter, unsubscribeDelayMillis,
+                unsubscribeDelayMillis > 0 ? scheduler() : null)
+                : null;
     }
 
     /**
@@ -205,16 +263,317 @@ public class Retrofit {
         synchronized (serviceMethodCache) {
             result = serviceMethodCache.get(method);
             if (result == null) {
+                long startNanos = System.nanoTime();
                 result = ServiceMethod.parseAnnotations(this, method);
                 serviceMethodCache.put(method, result);
+                eventListenerFactory.create(method)
+                        .serviceMethodParsed(method, System.nanoTime() - startNanos);
             }
         }
         return result;
     }
 
+    /**
+     * 将服务接口中所有方法声明的订阅主题合并成尽量少的 SUBSCRIBE 报文一次性订阅，
+     * 适合启动、重连时恢复大量订阅，每个报文最多包含 {@link #DEFAULT_TOPICS_PER_SUBSCRIBE} 个订阅主题。
+     *
+     * @see #subscribeAll(int, Class[])
+     */
+    public List<org.sheedon.mqtt.Observable> subscribeAll(Class<?>... services) {
+        return subscribeAll(DEFAULT_TOPICS_PER_SUBSCRIBE, services);
+    }
+
+    /**
+     * 将服务接口中所有方法通过 {@link org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE @SUBSCRIBE}、
+     * {@link org.sheedon.mqtt.retrofit.mqtt.SUBSCRIBE_ALL @SUBSCRIBE_ALL} 声明的订阅主题合并订阅。
+     * <p>
+     * 1. 未被 {@link org.sheedon.mqtt.retrofit.mqtt.Path @Path} 替换的占位层级替换为 {@code +}，相同主题只订阅一次。
+     * 2. 配置多个客户端时按主题分组，每个客户端各自合并。
+     * 3. 每个 SUBSCRIBE 报文最多包含 {@code maxTopicsPerSubscribe} 个订阅主题，超出时拆分为多个报文，
+     * 避免单个报文超出服务端限制。
+     * 4. 再次调用时，旧订阅对象中的订阅主题若已全部由新订阅对象重新订阅，则取消旧订阅对象，
+     * 之后只需对新返回的订阅对象取消订阅。
+     *
+     * @param maxTopicsPerSubscribe 每个 SUBSCRIBE 报文的订阅主题上限
+     * @param services              服务接口
+     * @return 已发起订阅的订阅对象，取消订阅时逐个调用 {@link org.sheedon.mqtt.Observable#unsubscribe}
+     */
+    public List<org.sheedon.mqtt.Observable> subscribeAll(int maxTopicsPerSubscribe, Class<?>... services) {
+        if (maxTopicsPerSubscribe <= 0) {
+            throw new IllegalArgumentException("maxTopicsPerSubscribe <= 0");
+        }
+        Map<String, SubscribeTopic> topics = new LinkedHashMap<>();
+        Platform platform = Platform.get();
+        for (Class<?> service : services) {
+            validateServiceInterface(service);
+            for (Method method : service.getDeclaredMethods()) {
+                if (platform.isDefaultMethod(method) || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                for (SubscribeTopic topic : loadServiceMethod(method).requestFactory().subscribeTopics()) {
+                    if (!topics.containsKey(topic.topic)) {
+                        topics.put(topic.topic, topic);
+                    }
+                }
+            }
+        }
+
+        List<org.sheedon.mqtt.Observable> observables = new ArrayList<>();
+        Map<String, org.sheedon.mqtt.Observable> handles = new HashMap<>();
+        for (SubscribeBatch batch : batches(topics.values(), maxTopicsPerSubscribe)) {
+            org.sheedon.mqtt.Observable observable = batch.factory.newObservable(batch.subscribe);
+            observable.enqueue();
+            observables.add(observable);
+            batch.putHandles(handles, observable);
+        }
+        for (org.sheedon.mqtt.Observable replaced : subscriptionRegistry.replaceSubscribedAll(handles)) {
+            replaced.cancel();
+        }
+        return unmodifiableList(observables);
+    }
+
+    /**
+     * 重连后恢复所有存活的订阅
+     *
+     * @see #resubscribe(ResubscribeCallback)
+     */
+    public void resubscribe() {
+        resubscribe(null);
+    }
+
+    /**
+     * 重连后恢复所有存活的订阅，即已入队且尚未取消订阅的 {@link Observable} 的订阅主题。
+     * <p>
+     * 订阅主题按客户端分组，合并为每个最多包含 {@link #DEFAULT_TOPICS_PER_SUBSCRIBE} 个订阅主题的
+     * SUBSCRIBE 报文一次性发出，而不是由各个 {@link Observable} 逐个恢复。
+     * 建议在连接成功回调中、执行其他业务代码之前调用，以缩短重连后的消息空窗。
+     * <p>
+     * 通过 {@link org.sheedon.mqtt.retrofit.mqtt.Body @Body} 直接传入订阅对象的订阅不会被登记。
+     * 上一次恢复时发出的订阅对象在本次报文发出后取消，不会随重连次数累积。
+     *
+     * @param callback 所有报文确认或失败后回调，可为空
+     */
+    public void resubscribe(@Nullable ResubscribeCallback callback) {
+        List<SubscribeBatch> batches = batches(subscriptionRegistry.snapshot(multiplexer), DEFAULT_TOPICS_PER_SUBSCRIBE);
+        long startNanos = System.nanoTime();
+        if (batches.isEmpty()) {
+            for (org.sheedon.mqtt.Observable replaced : subscriptionRegistry.replaceResubscribed(
+                    Collections.emptyMap())) {
+                replaced.cancel();
+            }
+            if (callback != null) {
+                callback.onResubscribed(0, 0, 0);
+            }
+            return;
+        }
+
+        int topicCount = 0;
+        for (SubscribeBatch batch : batches) {
+            topicCount += batch.size;
+        }
+        int total = topicCount;
+        AtomicInteger remaining = new AtomicInteger(batches.size());
+        AtomicInteger failedCount = new AtomicInteger();
+        Map<String, org.sheedon.mqtt.Observable> handles = new HashMap<>();
+        for (SubscribeBatch batch : batches) {
+            SubscribeBack back = new SubscribeBack() {
+                private final AtomicBoolean done = new AtomicBoolean();
+
+                @Override
+                public void onResponse(@Nullable MqttWireMessage response) {
+                    complete(false);
+                }
+
+                @Override
+                public void onFailure(@Nullable Throwable e) {
+                    complete(true);
+                }
+
+                private void complete(boolean failed) {
+                    if (!done.compareAndSet(false, true)) {
+                        return;
+                    }
+                    if (failed) {
+                        failedCount.addAndGet(batch.size);
+                    }
+                    if (remaining.decrementAndGet() == 0 && callback != null) {
+                        callback.onResubscribed(total, failedCount.get(), System.nanoTime() - startNanos);
+                    }
+                }
+            };
+            try {
+                org.sheedon.mqtt.Observable observable = batch.factory.newObservable(batch.subscribe);
+                observable.enqueue(back);
+                batch.putHandles(handles, observable);
+            } catch (RuntimeException e) {
+                back.onFailure(e);
+            }
+        }
+        for (org.sheedon.mqtt.Observable replaced : subscriptionRegistry.replaceResubscribed(handles)) {
+            replaced.cancel();
+        }
+    }
+
+    /**
+     * 按客户端分组，再按 {@code maxTopicsPerSubscribe} 拆分为多个 SUBSCRIBE 报文
+     */
+    private List<SubscribeBatch> batches(Collection<SubscribeTopic> topics, int maxTopicsPerSubscribe) {
+        Map<ObservableFactory, List<SubscribeTopic>> groups = new IdentityHashMap<>();
+        for (SubscribeTopic topic : topics) {
+            ObservableFactory factory = clientRouter.observableFactory(topic.topic);
+            List<SubscribeTopic> group = groups.get(factory);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(factory, group);
+            }
+            group.add(topic);
+        }
+
+        List<SubscribeBatch> batches = new ArrayList<>();
+        for (Map.Entry<ObservableFactory, List<SubscribeTopic>> entry : groups.entrySet()) {
+            List<SubscribeTopic> group = entry.getValue();
+            for (int start = 0; start < group.size(); start += maxTopicsPerSubscribe) {
+                int end = Math.min(start + maxTopicsPerSubscribe, group.size());
+                Subscribe.Builder builder = new Subscribe.Builder();
+                for (SubscribeTopic topic : group.subList(start, end)) {
+                    topic.addTo(builder, null);
+                }
+                batches.add(new SubscribeBatch(entry.getKey(), builder.build(), group.subList(start, end)));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * 一个 SUBSCRIBE 报文
+     */
+    private static final class SubscribeBatch {
+        final ObservableFactory factory;
+        final Subscribe subscribe;
+        final List<SubscribeTopic> topics;
+        final int size;
+
+        SubscribeBatch(ObservableFactory factory, Subscribe subscribe, List<SubscribeTopic> topics) {
+            this.factory = factory;
+            this.subscribe = subscribe;
+            this.topics = topics;
+            this.size = topics.size();
+        }
+
+        /**
+         * 将报文中的订阅主题记录为由 {@code observable} 订阅
+         */
+        void putHandles(Map<String, org.sheedon.mqtt.Observable> handles,
+                        org.sheedon.mqtt.Observable observable) {
+            for (SubscribeTopic topic : topics) {
+                handles.put(topic.topic, observable);
+            }
+        }
+    }
+
+    /**
+     * 转换器缓存的键，由转换器类别、跳过的工厂、类型和注解组成。
+     * <p>
+     * 注解按值比较，且不包含本库 {@code org.sheedon.mqtt.retrofit.mqtt} 包下的注解：
+     * 这些注解描述主题、参数名称等，不影响转换方式，例如 {@code @Path("id") String} 与 {@code @Path("name") String}
+     * 共用一个转换器。因此，自定义的 {@link Converter.Factory} 不应根据这些注解的取值返回不同的转换器。
+     */
+    static final class ConverterKey {
+        static final int REQUEST_BODY = 0;
+        static final int RESPONSE_BODY = 1;
+        static final int STRING = 2;
+        static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+        private static final String LIBRARY_ANNOTATION_PACKAGE = "org.sheedon.mqtt.retrofit.mqtt";
+
+        private final int kind;
+        private final @Nullable
+        Converter.Factory skipPast;
+        private final Type type;
+        private final Annotation[] annotations;
+        private final Annotation[] methodAnnotations;
+        private final int hashCode;
+
+        ConverterKey(int kind, @Nullable Converter.Factory skipPast, Type type,
+                     Annotation[] annotations, Annotation[] methodAnnotations) {
+            this.kind = kind;
+            this.skipPast = skipPast;
+            this.type = type;
+            this.annotations = relevant(annotations);
+            this.methodAnnotations = relevant(methodAnnotations);
+            int result = kind;
+            result = 31 * result + System.identityHashCode(skipPast);
+            result = 31 * result + type.hashCode();
+            result = 31 * result + Arrays.hashCode(this.annotations);
+            result = 31 * result + Arrays.hashCode(this.methodAnnotations);
+            this.hashCode = result;
+        }
+
+        /**
+         * 去除本库的注解，没有需要去除的注解时返回原数组
+         */
+        private static Annotation[] relevant(Annotation[] annotations) {
+            int count = 0;
+            for (Annotation annotation : annotations) {
+                if (!isLibraryAnnotation(annotation)) {
+                    count++;
+                }
+            }
+            if (count == annotations.length) {
+                return annotations;
+            }
+            Annotation[] result = new Annotation[count];
+            int index = 0;
+            for (Annotation annotation : annotations) {
+                if (!isLibraryAnnotation(annotation)) {
+                    result[index++] = annotation;
+                }
+            }
+            return result;
+        }
+
+        private static boolean isLibraryAnnotation(Annotation annotation) {
+            Package annotationPackage = annotation.annotationType().getPackage();
+            return annotationPackage != null && LIBRARY_ANNOTATION_PACKAGE.equals(annotationPackage.getName());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ConverterKey)) return false;
+            ConverterKey that = (ConverterKey) o;
+            return kind == that.kind
+                    && hashCode == that.hashCode
+                    && skipPast == that.skipPast
+                    && type.equals(that.type)
+                    && Arrays.equals(annotations, that.annotations)
+                    && Arrays.equals(methodAnnotations, that.methodAnnotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * {@link #resubscribe(ResubscribeCallback)} 的完成回调
+     */
+    public interface ResubscribeCallback {
+
+        /**
+         * 所有 SUBSCRIBE 报文确认或失败
+         *
+         * @param topicCount  恢复的订阅主题数
+         * @param failedCount 订阅失败的订阅主题数
+         * @param tookNanos   从发起到全部报文确认或失败的耗时
+         */
+        void onResubscribed(int topicCount, int failedCount, long tookNanos);
+    }
+
     /**
      * The factory used to create {@linkplain org.sheedon.mqtt.Call OkMqtt calls} for sending a MQTT requests.
-     * Typically an instance of {@link OkMqttClient}.
+     * Typically an instance of {@link OkMqttClient}. When several {@linkplain Builder#clients(List)
+     * clients} are configured, this is the first one and calls are spread across all of them by topic.
      */
     public CallFactory callFactory() {
         return callFactory;
@@ -325,12 +684,21 @@ public class Retrofit {
         Objects.requireNonNull(parameterAnnotations, "parameterAnnotations == null");
         Objects.requireNonNull(methodAnnotations, "methodAnnotations == null");
 
+        ConverterKey key = new ConverterKey(ConverterKey.REQUEST_BODY, skipPast,
+                type, parameterAnnotations, methodAnnotations);
+        Converter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (Converter<T, String>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             Converter.Factory factory = converterFactories.get(i);
             Converter<?, String> converter =
                     factory.requestBodyConverter(type, parameterAnnotations, methodAnnotations, this);
             if (converter != null) {
+                converterCache.put(key, converter);
                 //noinspection unchecked
                 return (Converter<T, String>) converter;
             }
@@ -373,11 +741,20 @@ public class Retrofit {
         Objects.requireNonNull(type, "type == null");
         Objects.requireNonNull(annotations, "annotations == null");
 
+        ConverterKey key = new ConverterKey(ConverterKey.RESPONSE_BODY, skipPast,
+                type, annotations, ConverterKey.NO_ANNOTATIONS);
+        Converter<?, ?> cached = converterCache.get(key);
+        if (cached != null) {
+            //noinspection unchecked
+            return (Converter<ResponseBody, T>) cached;
+        }
+
         int start = converterFactories.indexOf(skipPast) + 1;
         for (int i = start, count = converterFactories.size(); i < count; i++) {
             Converter<ResponseBody, ?> converter =
                     converterFactories.get(i).responseBodyConverter(type, annotations, this);
             if (converter != null) {
+                converterCache.put(key, converter);
                 //noinspection unchecked
                 return (Converter<ResponseBody, T>) converter;
             }
@@ -408,18 +785,24 @@ public class Retrofit {
         Objects.requireNonNull(type, "type == null");
         Objects.requireNonNull(annotations, "annotations == null");
 
-        for (int i = 0, count = converterFactories.size(); i < count; i++) {
-            Converter<?, String> converter =
-                    converterFactories.get(i).stringConverter(type, annotations, this);
-            if (converter != null) {
-                //noinspection unchecked
-                return (Converter<T, String>) converter;
+        ConverterKey key = new ConverterKey(ConverterKey.STRING, null,
+                type, annotations, ConverterKey.NO_ANNOTATIONS);
+        Converter<?, ?> converter = converterCache.get(key);
+        if (converter == null) {
+            for (int i = 0, count = converterFactories.size(); i < count; i++) {
+                converter = converterFactories.get(i).stringConverter(type, annotations, this);
+                if (converter != null) {
+                    break;
+                }
+            }
+            if (converter == null) {
+                // Nothing matched. Resort to default converter which just calls toString().
+                converter = BuiltInConverters.ToStringConverter.INSTANCE;
             }
+            converterCache.put(key, converter);
         }
-
-        // Nothing matched. Resort to default converter which just calls toString().
         //noinspection unchecked
-        return (Converter<T, String>) BuiltInConverters.ToStringConverter.INSTANCE;
+        return (Converter<T, String>) converter;
     }
 
     FormBodyConverter formBodyConverter() {
@@ -443,6 +826,112 @@ public class Retrofit {
         return callbackExecutor;
     }
 
+    /**
+     * 为每个 {@link Call}、{@link Observable} 创建 {@link EventListener} 的工厂。
+     */
+    public EventListener.Factory eventListenerFactory() {
+        return eventListenerFactory;
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Durable @Durable} 消息使用的离线发件箱，
+     * 未通过 {@link Builder#outbox(File)} 配置时为 null。
+     */
+    public @Nullable
+    Outbox outbox() {
+        return outbox;
+    }
+
+    /**
+     * 因 {@link Builder#unsubscribeDelay(long, TimeUnit) 延迟取消订阅} 而省去的订阅、取消订阅往返次数
+     */
+    public long savedSubscribeRoundTrips() {
+        return multiplexer != null ? multiplexer.savedRoundTrips() : 0;
+    }
+
+    /**
+     * 内部定时任务（超时扫描等）共用的调度线程，首次使用时创建
+     */
+    ScheduledExecutorService scheduler() {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = this.scheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "MqttRetrofit Scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    this.scheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Batch @Batch} 时间窗口到期时回调批次的线程，
+     * 避免使用者的回调占用 {@link #scheduler()}，首次使用时创建
+     */
+    Executor batchExecutor() {
+        Executor executor = this.batchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.batchExecutor;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "MqttRetrofit Batch");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    this.batchExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 等待响应的调用共用的截止时间轮，在 {@link #scheduler()} 线程推进，首次使用时创建
+     */
+    DeadlineWheel deadlineWheel() {
+        DeadlineWheel wheel = this.deadlineWheel;
+        if (wheel == null) {
+            synchronized (this) {
+                wheel = this.deadlineWheel;
+                if (wheel == null) {
+                    wheel = new DeadlineWheel(scheduler());
+                    this.deadlineWheel = wheel;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    /**
+     * {@link org.sheedon.mqtt.retrofit.mqtt.Correlated @Correlated} 调用共用的请求响应匹配器，首次使用时创建
+     */
+    CorrelationEngine correlationEngine() {
+        CorrelationEngine engine = this.correlationEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = this.correlationEngine;
+                if (engine == null) {
+                    engine = new CorrelationEngine(clientRouter, deadlineWheel());
+                    this.correlationEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * 以当前实例的配置创建构建者。
+     * <p>
+     * 未添加或移除转换器工厂时，构建的实例与当前实例共用注解解析结果和转换器，
+     * 只修改 {@link Builder#baseTopic(String) baseTopic} 派生出的实例无需重新解析接口方法。
+     */
     public Builder newBuilder() {
         return new Builder(this);
     }
@@ -452,6 +941,8 @@ public class Retrofit {
         CallFactory callFactory;
         private @Nullable
         ObservableFactory observableFactory;
+        private @Nullable
+        List<OkMqttClient> clients;
         private String baseTopic;
         private final List<Converter.Factory> converterFactories = new ArrayList<>();
         private final List<CallAdapter.Factory> callAdapterFactories = new ArrayList<>();
@@ -459,6 +950,20 @@ public class Retrofit {
         Executor callbackExecutor;
         private boolean validateEagerly;
         private int timeout;
+        private EventListener.Factory eventListenerFactory = EventListener.factory(EventListener.NONE);
+        private @Nullable
+        File outboxDirectory;
+        private long outboxMaxBytes;
+        private @Nullable
+        Outbox outbox;
+        private boolean multiplexSubscriptions;
+        private long unsubscribeDelayMillis;
+        private boolean bodyOnlyResponses;
+        // 派生自的实例的解析缓存及其转换器工厂，转换器工厂未改变时共用
+        private @Nullable
+        ParseCache parseCache;
+        private @Nullable
+        List<Converter.Factory> parseCacheConverterFactories;
 
         public Builder() {
         }
@@ -466,6 +971,7 @@ public class Retrofit {
         Builder(Retrofit retrofit) {
             callFactory = retrofit.callFactory;
             observableFactory = retrofit.observableFactory;
+            clients = retrofit.clients;
             baseTopic = retrofit.baseTopic;
 
             // Do not add the default BuiltIntConverters and platform-aware converters added by build().
@@ -487,6 +993,15 @@ public class Retrofit {
 
             callbackExecutor = retrofit.callbackExecutor;
             validateEagerly = retrofit.validateEagerly;
+            timeout = retrofit.timeout;
+            eventListenerFactory = retrofit.eventListenerFactory;
+            // 同一目录只能由一个发件箱读写，派生实例共用同一个发件箱
+            outbox = retrofit.outbox;
+            multiplexSubscriptions = retrofit.multiplexer != null;
+            unsubscribeDelayMillis = retrofit.unsubscribeDelayMillis;
+            bodyOnlyResponses = retrofit.bodyOnlyResponses;
+            parseCache = retrofit.parseCache;
+            parseCacheConverterFactories = new ArrayList<>(converterFactories);
         }
 
         /**
@@ -497,11 +1012,35 @@ public class Retrofit {
         public Builder client(OkMqttClient client) {
             OkMqttClient mqttClient = Objects.requireNonNull(client, "client == null");
             this.timeout = client.getDefaultTimeout();
+            this.clients = null;
             callFactory(mqttClient);
             observableFactory(mqttClient);
             return this;
         }
 
+        /**
+         * 用于请求的一组 MQTT 客户端，每个客户端对应一条独立的连接。
+         * <p>
+         * 调用按主题的一致性哈希分散到各个连接上：订阅和请求响应按订阅主题选择连接，
+         * 仅发送消息的请求按发送主题选择连接，因此同一主题的订阅始终固定在同一个连接上。
+         * 使用 {@link org.sheedon.mqtt.retrofit.mqtt.Body} 直接传入订阅对象时，使用第一个连接。
+         * <p>
+         * 默认超时时间取第一个客户端的配置。
+         */
+        public Builder clients(List<OkMqttClient> clients) {
+            Objects.requireNonNull(clients, "clients == null");
+            if (clients.isEmpty()) {
+                throw new IllegalArgumentException("clients is empty.");
+            }
+            List<OkMqttClient> copy = new ArrayList<>(clients.size());
+            for (OkMqttClient client : clients) {
+                copy.add(Objects.requireNonNull(client, "client == null"));
+            }
+            client(copy.get(0));
+            this.clients = unmodifiableList(copy);
+            return this;
+        }
+
         /**
          * 指定用于创建 {@link Call} 实例的自定义调用工厂。
          * <p>
@@ -509,6 +1048,7 @@ public class Retrofit {
          */
         public Builder callFactory(CallFactory factory) {
             this.callFactory = Objects.requireNonNull(factory, "CallFactory == null");
+            this.clients = null;
             return this;
         }
 
@@ -518,6 +1058,7 @@ public class Retrofit {
          */
         public Builder observableFactory(ObservableFactory factory) {
             this.observableFactory = Objects.requireNonNull(factory, "ObservableFactory == null");
+            this.clients = null;
             return this;
         }
 
@@ -556,6 +1097,88 @@ public class Retrofit {
             return this;
         }
 
+        /**
+         * 配置一个监听所有 {@link Call}、{@link Observable} 生命周期事件的单例监听器。
+         * <p>
+         * 若监听器需要保存单次调用的状态，请使用 {@link #eventListenerFactory}。
+         */
+        public Builder eventListener(EventListener eventListener) {
+            Objects.requireNonNull(eventListener, "eventListener == null");
+            this.eventListenerFactory = EventListener.factory(eventListener);
+            return this;
+        }
+
+        /**
+         * 配置为每个 {@link Call}、{@link Observable} 创建 {@link EventListener} 的工厂。
+         */
+        public Builder eventListenerFactory(EventListener.Factory eventListenerFactory) {
+            this.eventListenerFactory =
+                    Objects.requireNonNull(eventListenerFactory, "eventListenerFactory == null");
+            return this;
+        }
+
+        /**
+         * 启用离线发件箱，{@link org.sheedon.mqtt.retrofit.mqtt.Durable @Durable} 消息在离线时写入
+         * {@code directory} 下的日志，磁盘占用上限为 16MB。
+         */
+        public Builder outbox(File directory) {
+            return outbox(directory, Outbox.DEFAULT_MAX_BYTES);
+        }
+
+        /**
+         * 启用离线发件箱，{@link org.sheedon.mqtt.retrofit.mqtt.Durable @Durable} 消息在离线时写入
+         * {@code directory} 下的日志，超出 {@code maxBytes} 时丢弃最旧的消息。
+         * <p>
+         * 同一目录在进程中只能打开一次：同一构建者多次 {@link #build()} 以及 {@link Retrofit#newBuilder()}
+         * 派生的实例共用同一个发件箱，其他构建者再次打开该目录会在 {@link #build()} 时抛出
+         * {@link IllegalStateException}，需先 {@link Outbox#close()}。
+         */
+        public Builder outbox(File directory, long maxBytes) {
+            this.outboxDirectory = Objects.requireNonNull(directory, "directory == null");
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes <= 0");
+            }
+            this.outboxMaxBytes = maxBytes;
+            this.outbox = null;
+            return this;
+        }
+
+        /**
+         * 是否复用订阅。开启后，订阅同一主题的多个 {@link Observable} 共用一个 mqtt 订阅，
+         * 每条消息只转换一次再分发给各个订阅者，最后一个订阅者取消订阅时才向 mqtt-server 取消订阅。
+         * <p>
+         * 仅作用于只订阅、不发送消息且未配置 {@link org.sheedon.mqtt.retrofit.mqtt.KEYWORD @KEYWORD} 的方法。
+         */
+        public Builder multiplexSubscriptions(boolean multiplexSubscriptions) {
+            this.multiplexSubscriptions = multiplexSubscriptions;
+            return this;
+        }
+
+        /**
+         * 取消订阅延迟。最后一个订阅者取消订阅后，延迟 {@code delay} 再向 mqtt-server 取消订阅，
+         * 期间同一主题有新的订阅者则直接复用原订阅，适用于界面旋转、快速切换页面等场景。
+         * <p>
+         * 大于 0 时同时开启 {@link #multiplexSubscriptions(boolean) 订阅复用}，默认为 0，即立即取消订阅。
+         */
+        public Builder unsubscribeDelay(long delay, TimeUnit unit) {
+            Objects.requireNonNull(unit, "unit == null");
+            if (delay < 0) {
+                throw new IllegalArgumentException("delay < 0");
+            }
+            this.unsubscribeDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * 是否使用轻量响应。开启后，转换完成的 {@link Response} 只保留转换结果与消息主题，不再引用原始响应及其消息载荷，
+         * 适合长期持有转换结果的场景；{@link Response#raw()} 返回 null。
+         * 未使用路径参数的 {@code Void}、{@code Unit} 响应共用同一个实例。默认关闭。
+         */
+        public Builder bodyOnlyResponses(boolean bodyOnlyResponses) {
+            this.bodyOnlyResponses = bodyOnlyResponses;
+            return this;
+        }
+
         /**
          * 返回调用适配器工厂的可修改列表。
          */
@@ -596,6 +1219,21 @@ public class Retrofit {
                 throw new IllegalStateException("callFactory is null.");
             }
 
+            ClientRouter clientRouter = clients != null
+                    ? ClientRouter.sharded(clients, clients)
+                    : ClientRouter.single(callFactory, observableFactory);
+
+            Outbox outbox = this.outbox;
+            if (outbox == null && outboxDirectory != null) {
+                try {
+                    outbox = Outbox.open(outboxDirectory, outboxMaxBytes, clientRouter);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to open outbox " + outboxDirectory, e);
+                }
+                // 再次 build() 时共用同一个发件箱，避免重复映射同一组日志文件
+                this.outbox = outbox;
+            }
+
             Executor callbackExecutor = this.callbackExecutor;
             if (callbackExecutor == null) {
                 callbackExecutor = platform.defaultCallbackExecutor();
@@ -620,12 +1258,19 @@ public class Retrofit {
             converterFactories.addAll(this.converterFactories);
             converterFactories.addAll(defaultConverterFactories);
 
-            return new Retrofit(callFactory, observableFactory, baseTopic,
+            // 转换器工厂与派生自的实例相同时，解析结果与之相同，只有基础主题等配置需要分别应用
+            ParseCache parseCache = this.parseCache;
+            if (parseCache == null || !this.converterFactories.equals(parseCacheConverterFactories)) {
+                parseCache = new ParseCache();
+            }
+
+            return new Retrofit(callFactory, observableFactory, clientRouter, clients, baseTopic,
                     unmodifiableList(converterFactories),
                     defaultConverterFactoriesSize,
                     unmodifiableList(callAdapterFactories),
                     defaultCallAdapterFactories.size(),
-                    callbackExecutor, validateEagerly, timeout);
+                    callbackExecutor, validateEagerly, timeout, eventListenerFactory, outbox,
+                    multiplexSubscriptions, unsubscribeDelayMillis, bodyOnlyResponses, parseCache);
         }
     }
 }
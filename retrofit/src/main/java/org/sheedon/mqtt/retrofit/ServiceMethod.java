@@ -44,6 +44,7 @@ import java.lang.reflect.Type;
  * @Date: 2022/2/6 4:18 下午
  */
 abstract class ServiceMethod<T> {
+    @SuppressWarnings("unchecked")
     static <T> ServiceMethod<T> parseAnnotations(Retrofit retrofit, Method method) {
         RequestFactory requestFactory = RequestFactory.parseAnnotations(retrofit, method);
 
@@ -57,10 +58,18 @@ abstract class ServiceMethod<T> {
         if (returnType == void.class) {
             throw methodError(method, "Service methods cannot return void.");
         }
+        if (returnType == NumericObservable.class) {
+            return (ServiceMethod<T>) new NumericServiceMethod(retrofit, requestFactory);
+        }
 
         return MqttServiceMethod.parseAnnotations(retrofit, method, requestFactory);
     }
 
     abstract @Nullable
     T invoke(Object[] args);
+
+    /**
+     * 服务方法解析得到的请求工厂
+     */
+    abstract RequestFactory requestFactory();
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import org.sheedon.mqtt.Subscribe;
+import org.sheedon.mqtt.SubscriptionType;
+
+/**
+ * 一个订阅主题及其订阅配置
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 22:48
+ */
+final class SubscribeTopic {
+    final String topic;
+    final int qos;
+    final boolean attachRecord;
+    final SubscriptionType subscriptionType;
+
+    SubscribeTopic(String topic, int qos, boolean attachRecord,
+                   @Nullable SubscriptionType subscriptionType) {
+        this.topic = topic;
+        this.qos = qos < 0 || qos > 2 ? 0 : qos;
+        this.attachRecord = attachRecord;
+        this.subscriptionType = subscriptionType == null ? SubscriptionType.REMOTE : subscriptionType;
+    }
+
+    /**
+     * 添加到订阅构建者中
+     */
+    void addTo(Subscribe.Builder builder, @Nullable String keyword) {
+        builder.add(topic, keyword, qos, attachRecord, subscriptionType);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SubscribeTopic)) return false;
+        SubscribeTopic that = (SubscribeTopic) o;
+        return qos == that.qos
+                && attachRecord == that.attachRecord
+                && topic.equals(that.topic)
+                && subscriptionType == that.subscriptionType;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = topic.hashCode();
+        result = 31 * result + qos;
+        result = 31 * result + (attachRecord ? 1 : 0);
+        result = 31 * result + subscriptionType.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscribeTopic{" +
+                "topic='" + topic + '\'' +
+                ", qos=" + qos +
+                ", attachRecord=" + attachRecord +
+                ", subscriptionType=" + subscriptionType +
+                '}';
+    }
+}
@@ -0,0 +1,608 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttSubscribe;
+import org.eclipse.paho.client.mqttv3.internal.wire.MqttWireMessage;
+import org.sheedon.mqtt.FullCallback;
+import org.sheedon.mqtt.ResponseBody;
+import org.sheedon.mqtt.Subscribe;
+import org.sheedon.mqtt.SubscriptionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.sheedon.mqtt.retrofit.Utils.throwIfFatal;
+
+/**
+ * 订阅复用器，同一个订阅主题只向 mqtt-server 订阅一次。
+ * <p>
+ * 1. 多个 {@link Observable} 订阅同一主题时共用一个 OkMqtt 订阅，按引用计数管理，最后一个订阅者离开时才取消订阅。
+ * 2. 每条消息只转换一次：使用同一个 {@link Converter}、{@link TopicTemplate} 的订阅者共享转换结果以及 {@link Response} 对象。
+ * 3. 订阅确认后加入的订阅者直接收到缓存的确认结果，无需再次往返。
+ * 4. 被已订阅主题覆盖的订阅主题（例如 "site/1/device/+" 被 "site/#" 覆盖）不再向 mqtt-server 订阅，
+ * 而是挂在覆盖它的订阅组下，由 {@link TopicTrie} 按消息主题在本地分发，因此同一条消息不会重复收到；
+ * 覆盖它的订阅组关闭后，再转为向 mqtt-server 订阅。
+ * 5. 订阅组按订阅主题和订阅类型区分，qos 更高的订阅者加入时以更高的 qos 重新向 mqtt-server 订阅，
+ * 订阅组的 qos 始终不低于其中任何一个订阅者的 qos。
+ * 6. 配置了取消订阅延迟时，最后一个订阅者离开后先保留订阅，延迟期间有新的订阅者加入则直接复用，
+ * 避免界面旋转、快速切换页面时反复向 mqtt-server 取消订阅、重新订阅，节省的往返次数可通过
+ * {@link #savedRoundTrips()} 获取。
+ * <p>
+ * 通过 {@link Retrofit.Builder#multiplexSubscriptions(boolean)} 开启，仅作用于只订阅不发送消息、
+ * 且未配置 {@link org.sheedon.mqtt.retrofit.mqtt.KEYWORD @KEYWORD} 的 {@link Observable}。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 20:14
+ */
+final class SubscriptionMultiplexer {
+
+    private static final Subscriber<?>[] EMPTY = new Subscriber<?>[0];
+
+    private final ClientRouter clientRouter;
+    private final long unsubscribeDelayMillis;
+    private final @Nullable
+    ScheduledExecutorService scheduler;
+    private final AtomicLong savedRoundTrips = new AtomicLong();
+    // 按订阅类型和订阅主题区分的订阅组
+    @GuardedBy("this")
+    private final Map<String, Group> groups = new HashMap<>();
+    // 向 mqtt-server 订阅的订阅组
+    @GuardedBy("this")
+    private final TopicTrie<Group> brokerGroups = new TopicTrie<>();
+    // 被其他订阅组覆盖、只在本地分发的订阅组
+    private final TopicTrie<Group> localGroups = new TopicTrie<>();
+
+    /**
+     * @param clientRouter           客户端路由
+     * @param unsubscribeDelayMillis 取消订阅延迟，不大于 0 时立即取消订阅
+     * @param scheduler              延迟取消订阅使用的调度线程，延迟大于 0 时不能为空
+     */
+    SubscriptionMultiplexer(ClientRouter clientRouter, long unsubscribeDelayMillis,
+                            @Nullable ScheduledExecutorService scheduler) {
+        this.clientRouter = clientRouter;
+        this.unsubscribeDelayMillis = scheduler != null ? unsubscribeDelayMillis : 0;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 因延迟取消订阅而省去的往返次数，每复用一次省去一次取消订阅和一次订阅
+     */
+    long savedRoundTrips() {
+        return savedRoundTrips.get();
+    }
+
+    /**
+     * 加入 {@code filter} 的订阅组。若该主题尚未订阅，且没有已订阅的主题覆盖它，
+     * 则通过 {@code subscribe} 向 mqtt-server 订阅；否则挂在覆盖它的订阅组下，由本地分发消息。
+     * 订阅组已存在但 {@code qos} 高于订阅组的 qos 时，改用 {@code subscribe} 重新订阅。
+     *
+     * @param filter     订阅主题
+     * @param qos        订阅 qos
+     * @param type       订阅类型
+     * @param subscribe  订阅对象
+     * @param subscriber 本地订阅者
+     */
+    void subscribe(String filter, int qos, @Nullable SubscriptionType type,
+                   Subscribe subscribe, Subscriber<?> subscriber) {
+        Group group;
+        boolean start = false;
+        MqttSubscribe ack = null;
+        boolean acked;
+        synchronized (this) {
+            SubscriptionType subscriptionType = type == null ? SubscriptionType.REMOTE : type;
+            String key = key(filter, subscriptionType);
+            group = groups.get(key);
+            if (group == null) {
+                group = new Group(key, filter, qos, subscriptionType, subscribe);
+                groups.put(key, group);
+                Group parent = findCovering(group);
+                if (parent != null) {
+                    attach(group, parent);
+                } else {
+                    brokerGroups.add(filter, group);
+                    start = true;
+                }
+            } else {
+                if (group.pendingClose != null) {
+                    // 延迟期间有新的订阅者加入，撤销取消订阅
+                    group.pendingClose.cancel(false);
+                    group.pendingClose = null;
+                    savedRoundTrips.addAndGet(2);
+                }
+                if (subscriptionType == SubscriptionType.REMOTE && qos > group.qos) {
+                    start = upgrade(group, qos, subscribe);
+                }
+            }
+            group.add(subscriber);
+            subscriber.group = group;
+            acked = group.acked;
+            if (acked) {
+                ack = group.ack;
+            }
+        }
+
+        if (start) {
+            start(group);
+        }
+        // 以更高的 qos 重新订阅时，订阅组已确认，直接反馈给新加入的订阅者
+        if (acked) {
+            subscriber.onSubscribed(ack);
+        }
+    }
+
+    private static String key(String filter, SubscriptionType type) {
+        return type.name() + ':' + filter;
+    }
+
+    /**
+     * 以更高的 qos 订阅 {@code group}。挂在其他订阅组下的订阅组若不再被覆盖，则转为向 mqtt-server 订阅；
+     * mqtt-server 订阅组则以新的订阅对象重新订阅，同一主题的订阅由 mqtt-server 更新 qos，无需先取消订阅。
+     *
+     * @return 是否需要向 mqtt-server 订阅
+     */
+    @GuardedBy("this")
+    private boolean upgrade(Group group, int qos, Subscribe subscribe) {
+        group.qos = qos;
+        group.subscribe = subscribe;
+        Group parent = group.parent;
+        if (parent == null) {
+            return true;
+        }
+        if (parent.qos >= qos) {
+            return false;
+        }
+        parent.attached.remove(group);
+        localGroups.remove(group.filter, group);
+        group.parent = null;
+        Group cover = findCovering(group);
+        if (cover != null) {
+            attach(group, cover);
+            return false;
+        }
+        brokerGroups.add(group.filter, group);
+        return true;
+    }
+
+    /**
+     * {@code filter} 是否只挂在覆盖它的订阅组下、在本地分发，而没有单独向 mqtt-server 订阅
+     */
+    synchronized boolean routesLocally(String filter, SubscriptionType type) {
+        Group group = groups.get(key(filter, type));
+        return group != null && group.parent != null;
+    }
+
+    /**
+     * 离开订阅组，最后一个订阅者离开时关闭订阅组。
+     * 配置了取消订阅延迟时，mqtt-server 订阅组在延迟结束后仍没有订阅者才关闭。
+     */
+    void unsubscribe(Subscriber<?> subscriber) {
+        org.sheedon.mqtt.Observable observable;
+        List<Group> promoted = new ArrayList<>();
+        synchronized (this) {
+            Group group = subscriber.group;
+            subscriber.group = null;
+            if (group == null || !group.remove(subscriber) || group.subscribers.length > 0) {
+                return;
+            }
+            if (unsubscribeDelayMillis > 0 && group.parent == null && scheduler != null) {
+                group.closeAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(unsubscribeDelayMillis);
+                group.pendingClose = scheduler.schedule(() -> closeDelayed(group),
+                        unsubscribeDelayMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+            observable = close(group, promoted);
+        }
+        stop(promoted, observable);
+    }
+
+    /**
+     * 延迟结束，订阅组仍没有订阅者时关闭
+     */
+    private void closeDelayed(Group group) {
+        org.sheedon.mqtt.Observable observable;
+        List<Group> promoted = new ArrayList<>();
+        synchronized (this) {
+            // 已撤销，或撤销后再次延迟取消订阅
+            if (group.pendingClose == null || group.closed || group.subscribers.length > 0
+                    || System.nanoTime() - group.closeAtNanos < 0) {
+                return;
+            }
+            group.pendingClose = null;
+            observable = close(group, promoted);
+        }
+        stop(promoted, observable);
+    }
+
+    private void stop(List<Group> promoted, @Nullable org.sheedon.mqtt.Observable observable) {
+        // 先为失去覆盖的订阅组订阅，再取消原订阅，尽量减少消息空窗
+        for (Group group : promoted) {
+            start(group);
+        }
+        if (observable != null) {
+            observable.unsubscribe(null);
+        }
+    }
+
+    /**
+     * 关闭订阅组。若为 mqtt-server 订阅组，则将挂在其下的订阅组转移到其他覆盖它们的订阅组，
+     * 没有则放入 {@code promoted}，由调用方向 mqtt-server 订阅。
+     *
+     * @return 需要取消订阅的 OkMqtt 订阅
+     */
+    @GuardedBy("this")
+    @Nullable
+    private org.sheedon.mqtt.Observable close(Group group, List<Group> promoted) {
+        if (groups.get(group.key) == group) {
+            groups.remove(group.key);
+        }
+        group.closed = true;
+
+        Group parent = group.parent;
+        if (parent != null) {
+            parent.attached.remove(group);
+            localGroups.remove(group.filter, group);
+            group.parent = null;
+            return null;
+        }
+
+        brokerGroups.remove(group.filter, group);
+        for (Group child : group.attached) {
+            localGroups.remove(child.filter, child);
+            child.parent = null;
+            Group cover = findCovering(child);
+            if (cover != null) {
+                attach(child, cover);
+            } else {
+                brokerGroups.add(child.filter, child);
+                promoted.add(child);
+            }
+        }
+        group.attached.clear();
+        return group.observable;
+    }
+
+    /**
+     * 查找覆盖 {@code group} 的 mqtt-server 订阅组，本地订阅以及 qos 不足的订阅组除外
+     */
+    @GuardedBy("this")
+    @Nullable
+    private Group findCovering(Group group) {
+        if (group.type != SubscriptionType.REMOTE) {
+            return null;
+        }
+        return brokerGroups.findCovering(group.filter, candidate -> candidate != group
+                && !candidate.closed
+                && candidate.type == SubscriptionType.REMOTE
+                && candidate.qos >= group.qos);
+    }
+
+    @GuardedBy("this")
+    private void attach(Group group, Group parent) {
+        group.parent = parent;
+        parent.attached.add(group);
+        localGroups.add(group.filter, group);
+        if (parent.acked) {
+            group.acked = true;
+            group.ack = parent.ack;
+        }
+    }
+
+    private void start(Group group) {
+        Subscribe subscribe;
+        synchronized (this) {
+            subscribe = group.subscribe;
+        }
+        org.sheedon.mqtt.Observable observable;
+        try {
+            observable = clientRouter.observableFactory(group.filter).newObservable(subscribe);
+        } catch (RuntimeException e) {
+            group.onFailure(e);
+            return;
+        }
+        org.sheedon.mqtt.Observable previous;
+        synchronized (this) {
+            // 订阅发出前所有订阅者已离开，或已有更高 qos 的订阅者加入
+            if (group.closed || group.subscribe != subscribe) {
+                return;
+            }
+            previous = group.observable;
+            group.observable = observable;
+        }
+        try {
+            observable.enqueue(group);
+        } catch (RuntimeException e) {
+            group.onFailure(e);
+            return;
+        }
+        if (previous != null) {
+            // 以更高的 qos 重新订阅后，只移除原订阅的本地回调，mqtt-server 上的订阅已被更新
+            previous.cancel();
+        }
+    }
+
+    /**
+     * 订阅失败，移除订阅组以及挂在其下的订阅组，返回受影响的订阅者
+     */
+    private synchronized List<Subscriber<?>> fail(Group group) {
+        List<Subscriber<?>> failed = new ArrayList<>();
+        List<Group> closing = new ArrayList<>();
+        closing.add(group);
+        closing.addAll(group.attached);
+        group.attached.clear();
+        for (Group closed : closing) {
+            if (groups.get(closed.key) == closed) {
+                groups.remove(closed.key);
+            }
+            closed.closed = true;
+            if (closed.pendingClose != null) {
+                closed.pendingClose.cancel(false);
+                closed.pendingClose = null;
+            }
+            if (closed.parent != null) {
+                localGroups.remove(closed.filter, closed);
+                closed.parent = null;
+            } else {
+                brokerGroups.remove(closed.filter, closed);
+            }
+            for (Subscriber<?> subscriber : closed.subscribers) {
+                subscriber.group = null;
+                failed.add(subscriber);
+            }
+            closed.subscribers = EMPTY;
+        }
+        return failed;
+    }
+
+    /**
+     * 一个订阅主题对应的订阅组
+     */
+    private final class Group implements FullCallback {
+        final String key;
+        final String filter;
+        final SubscriptionType type;
+        // 订阅组内最高的订阅 qos，以及按该 qos 构造的订阅对象
+        volatile int qos;
+        @GuardedBy("SubscriptionMultiplexer.this")
+        Subscribe subscribe;
+        // 写时复制，消息分发时无需加锁
+        volatile Subscriber<?>[] subscribers = EMPTY;
+        // 覆盖本订阅组的 mqtt-server 订阅组，为空表示本订阅组直接向 mqtt-server 订阅
+        volatile @Nullable
+        Group parent;
+        @GuardedBy("SubscriptionMultiplexer.this")
+        final List<Group> attached = new ArrayList<>();
+        @GuardedBy("SubscriptionMultiplexer.this")
+        boolean acked;
+        @GuardedBy("SubscriptionMultiplexer.this")
+        @Nullable
+        MqttSubscribe ack;
+        @GuardedBy("SubscriptionMultiplexer.this")
+        boolean closed;
+        // 当前生效的 OkMqtt 订阅，重新订阅后原订阅的消息不再分发
+        volatile @Nullable
+        org.sheedon.mqtt.Observable observable;
+        // 等待执行的延迟取消订阅
+        @GuardedBy("SubscriptionMultiplexer.this")
+        @Nullable
+        ScheduledFuture<?> pendingClose;
+        @GuardedBy("SubscriptionMultiplexer.this")
+        long closeAtNanos;
+
+        Group(String key, String filter, int qos, SubscriptionType type, Subscribe subscribe) {
+            this.key = key;
+            this.filter = filter;
+            this.qos = qos;
+            this.type = type;
+            this.subscribe = subscribe;
+        }
+
+        @GuardedBy("SubscriptionMultiplexer.this")
+        void add(Subscriber<?> subscriber) {
+            Subscriber<?>[] current = subscribers;
+            Subscriber<?>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscriber;
+            subscribers = updated;
+        }
+
+        @GuardedBy("SubscriptionMultiplexer.this")
+        boolean remove(Subscriber<?> subscriber) {
+            Subscriber<?>[] current = subscribers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscriber) {
+                    Subscriber<?>[] updated = new Subscriber<?>[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    subscribers = updated;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void onResponse(@Nullable MqttWireMessage response) {
+            MqttSubscribe ack = response instanceof MqttSubscribe ? (MqttSubscribe) response : null;
+            List<Subscriber<?>> notify = new ArrayList<>();
+            synchronized (SubscriptionMultiplexer.this) {
+                // 由本地订阅组转为 mqtt-server 订阅组时，订阅者已收到过确认
+                if (!acked) {
+                    acked = true;
+                    this.ack = ack;
+                    notify.addAll(Arrays.asList(subscribers));
+                }
+                for (Group child : attached) {
+                    if (!child.acked) {
+                        child.acked = true;
+                        child.ack = ack;
+                        notify.addAll(Arrays.asList(child.subscribers));
+                    }
+                }
+            }
+            for (Subscriber<?> subscriber : notify) {
+                subscriber.onSubscribed(ack);
+            }
+        }
+
+        @Override
+        public void onResponse(@NonNull org.sheedon.mqtt.Observable observable,
+                               @NonNull org.sheedon.mqtt.Response rawResponse) {
+            if (observable != this.observable) {
+                // 重新订阅前的原订阅，避免同一条消息分发两次
+                return;
+            }
+            Subscriber<?>[] subscribers = this.subscribers;
+            ResponseBody body = rawResponse.getBody();
+            String topic = body != null ? body.getTopic() : null;
+            if (topic == null || localGroups.isEmpty()) {
+                dispatch(subscribers, rawResponse);
+                return;
+            }
+
+            // 同时分发给挂在本订阅组下、与消息主题匹配的本地订阅组
+            List<Subscriber<?>> all = new ArrayList<>(Arrays.asList(subscribers));
+            localGroups.match(topic, group -> {
+                if (group.parent == this) {
+                    all.addAll(Arrays.asList(group.subscribers));
+                }
+            });
+            dispatch(all.toArray(EMPTY), rawResponse);
+        }
+
+        @Override
+        public void onFailure(@Nullable Throwable e) {
+            Throwable failure = Utils.failure(e);
+            for (Subscriber<?> subscriber : fail(this)) {
+                subscriber.onFailure(failure);
+            }
+        }
+    }
+
+    /**
+     * 将消息分发给订阅者，使用同一个转换器的订阅者只转换一次
+     */
+    static void dispatch(Subscriber<?>[] subscribers, org.sheedon.mqtt.Response rawResponse) {
+        int length = subscribers.length;
+        if (length == 0) {
+            return;
+        }
+        ResponseBody body = rawResponse.getBody();
+        String topic = body != null ? body.getTopic() : null;
+
+        Converter<?, ?>[] converters = new Converter<?, ?>[length];
+        TopicTemplate[] templates = new TopicTemplate[length];
+        Object[] results = new Object[length];
+        int count = 0;
+        for (Subscriber<?> subscriber : subscribers) {
+            subscriber.eventListener.responseReceived(topic);
+
+            Object result = null;
+            for (int i = 0; i < count; i++) {
+                if (converters[i] == subscriber.converter && templates[i] == subscriber.template) {
+                    result = results[i];
+                    break;
+                }
+            }
+            if (result == null) {
+                result = convert(subscriber, rawResponse);
+                converters[count] = subscriber.converter;
+                templates[count] = subscriber.template;
+                results[count++] = result;
+            }
+            subscriber.deliver(result);
+        }
+    }
+
+    /**
+     * 转换消息，返回 {@link Response} 或转换过程中的异常
+     */
+    private static Object convert(Subscriber<?> subscriber, org.sheedon.mqtt.Response rawResponse) {
+        try {
+            subscriber.eventListener.responseConvertStart();
+            Object body = subscriber.converter.convert(rawResponse.getBody());
+            subscriber.eventListener.responseConvertEnd();
+            return Response.success(subscriber.converter, body, rawResponse,
+                    subscriber.template, subscriber.bodyOnly);
+        } catch (Throwable e) {
+            throwIfFatal(e);
+            return e;
+        }
+    }
+
+    /**
+     * 订阅组中的一个本地订阅者
+     */
+    abstract static class Subscriber<T> {
+        final Converter<ResponseBody, T> converter;
+        final EventListener eventListener;
+        final @Nullable
+        TopicTemplate template;
+        // 轻量响应模式
+        final boolean bodyOnly;
+        @GuardedBy("SubscriptionMultiplexer.this")
+        @Nullable
+        Group group;
+
+        Subscriber(Converter<ResponseBody, T> converter, EventListener eventListener,
+                   @Nullable TopicTemplate template, boolean bodyOnly) {
+            this.converter = converter;
+            this.eventListener = eventListener;
+            this.template = template;
+            this.bodyOnly = bodyOnly;
+        }
+
+        /**
+         * 订阅确认
+         */
+        abstract void onSubscribed(@Nullable MqttSubscribe ack);
+
+        /**
+         * 收到消息
+         */
+        abstract void onResponse(Response<T> response);
+
+        /**
+         * 订阅失败，订阅已结束
+         */
+        abstract void onFailure(@Nullable Throwable t);
+
+        /**
+         * 单条消息转换失败，订阅继续接收后续消息
+         */
+        abstract void onConvertFailure(Throwable t);
+
+        @SuppressWarnings("unchecked")
+        final void deliver(Object result) {
+            if (result instanceof Throwable) {
+                onConvertFailure((Throwable) result);
+            } else {
+                onResponse((Response<T>) result);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import org.sheedon.mqtt.SubscriptionType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 当前存活的订阅登记表，用于重连后通过 {@link Retrofit#resubscribe(Retrofit.ResubscribeCallback)} 批量恢复订阅。
+ * <p>
+ * 1. 每个 {@link Observable} 订阅成功入队时登记其订阅主题，取消订阅、取消或订阅失败时移除。
+ * 2. 相同的订阅配置按引用计数登记，多个 {@link Observable} 订阅同一主题只恢复一次。
+ * 3. 同一订阅主题存在多个 qos 时，以最大 qos 恢复；本地订阅无需向 mqtt-server 恢复。
+ * 4. 只由 {@link SubscriptionMultiplexer} 挂在覆盖它的订阅组下、在本地分发的订阅主题不恢复，
+ * 恢复覆盖它的订阅主题即可，避免在 mqtt-server 上重复订阅。
+ * 5. 按订阅主题记录 {@link Retrofit#subscribeAll(Class[])}、{@link Retrofit#resubscribe()} 最近一次发出的订阅对象，
+ * 再次发出时返回被替换的旧订阅对象，由调用方取消，避免 OkMqtt 中的订阅对象随调用次数累积。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:20
+ */
+final class SubscriptionRegistry {
+
+    // 引用计数，[0] 为全部登记次数，[1] 为经由订阅复用器的登记次数
+    @GuardedBy("this")
+    private final Map<SubscribeTopic, int[]> counts = new HashMap<>();
+
+    // subscribeAll 发出的订阅对象，按订阅主题记录
+    @GuardedBy("this")
+    private final Map<String, org.sheedon.mqtt.Observable> subscribedAll = new HashMap<>();
+
+    // 上一次 resubscribe 发出的订阅对象，按订阅主题记录
+    @GuardedBy("this")
+    private Map<String, org.sheedon.mqtt.Observable> resubscribed = Collections.emptyMap();
+
+    /**
+     * 登记订阅主题
+     */
+    void add(SubscribeTopic[] topics) {
+        add(topics, false);
+    }
+
+    /**
+     * 登记订阅主题
+     *
+     * @param shared 是否经由 {@link SubscriptionMultiplexer} 订阅
+     */
+    synchronized void add(SubscribeTopic[] topics, boolean shared) {
+        for (SubscribeTopic topic : topics) {
+            int[] count = counts.get(topic);
+            if (count == null) {
+                count = new int[2];
+                counts.put(topic, count);
+            }
+            count[0]++;
+            if (shared) {
+                count[1]++;
+            }
+        }
+    }
+
+    /**
+     * 移除订阅主题，引用计数归零时不再恢复
+     */
+    void remove(SubscribeTopic[] topics) {
+        remove(topics, false);
+    }
+
+    /**
+     * 移除订阅主题，引用计数归零时不再恢复
+     *
+     * @param shared 登记时是否经由 {@link SubscriptionMultiplexer} 订阅
+     */
+    synchronized void remove(SubscribeTopic[] topics, boolean shared) {
+        for (SubscribeTopic topic : topics) {
+            int[] count = counts.get(topic);
+            if (count == null) {
+                continue;
+            }
+            if (shared) {
+                count[1]--;
+            }
+            if (--count[0] == 0) {
+                counts.remove(topic);
+            }
+        }
+    }
+
+    /**
+     * 记录 {@link Retrofit#subscribeAll(Class[])} 新发出的订阅对象
+     *
+     * @param handles 订阅主题及订阅它的订阅对象
+     * @return 订阅主题已全部被新订阅对象替换、需要取消的旧订阅对象
+     */
+    synchronized List<org.sheedon.mqtt.Observable> replaceSubscribedAll(
+            Map<String, org.sheedon.mqtt.Observable> handles) {
+        Set<org.sheedon.mqtt.Observable> previous = identitySet();
+        for (Map.Entry<String, org.sheedon.mqtt.Observable> entry : handles.entrySet()) {
+            org.sheedon.mqtt.Observable old = subscribedAll.put(entry.getKey(), entry.getValue());
+            if (old != null) {
+                previous.add(old);
+            }
+        }
+        return retired(previous, subscribedAll);
+    }
+
+    /**
+     * 以 {@link Retrofit#resubscribe()} 本次发出的订阅对象替换上一次的记录
+     *
+     * @param handles 订阅主题及订阅它的订阅对象
+     * @return 不再订阅任何主题、需要取消的上一次的订阅对象
+     */
+    synchronized List<org.sheedon.mqtt.Observable> replaceResubscribed(
+            Map<String, org.sheedon.mqtt.Observable> handles) {
+        Set<org.sheedon.mqtt.Observable> previous = identitySet();
+        previous.addAll(resubscribed.values());
+        resubscribed = new HashMap<>(handles);
+        return retired(previous, resubscribed);
+    }
+
+    /**
+     * {@code previous} 中不再被 {@code current} 记录的订阅对象
+     */
+    private static List<org.sheedon.mqtt.Observable> retired(
+            Set<org.sheedon.mqtt.Observable> previous, Map<String, org.sheedon.mqtt.Observable> current) {
+        if (previous.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (org.sheedon.mqtt.Observable observable : current.values()) {
+            previous.remove(observable);
+        }
+        return new ArrayList<>(previous);
+    }
+
+    private static Set<org.sheedon.mqtt.Observable> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    synchronized int size() {
+        return counts.size();
+    }
+
+    /**
+     * 需要向 mqtt-server 恢复的订阅主题，每个订阅主题只出现一次
+     *
+     * @param multiplexer 订阅复用器，未开启订阅复用时为空
+     */
+    synchronized List<SubscribeTopic> snapshot(@Nullable SubscriptionMultiplexer multiplexer) {
+        Map<String, SubscribeTopic> topics = new LinkedHashMap<>(counts.size() * 2);
+        for (Map.Entry<SubscribeTopic, int[]> entry : counts.entrySet()) {
+            SubscribeTopic topic = entry.getKey();
+            if (topic.subscriptionType != SubscriptionType.REMOTE) {
+                continue;
+            }
+            int[] count = entry.getValue();
+            if (multiplexer != null && count[0] == count[1]
+                    && multiplexer.routesLocally(topic.topic, topic.subscriptionType)) {
+                continue;
+            }
+            SubscribeTopic current = topics.get(topic.topic);
+            if (current == null || current.qos < topic.qos) {
+                topics.put(topic.topic, topic);
+            }
+        }
+        return new ArrayList<>(topics.values());
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 主题模版，在创建请求工厂时预编译发送主题、订阅主题、有效载荷和关键字中的 {@code {name}} 占位符，
+ * 所有位置共用这一个模版编译器。
+ * <p>
+ * 1. 每次调用由 {@link Values} 按占位符位置记录 {@link org.sheedon.mqtt.retrofit.mqtt.Path @Path} 的值，
+ * 全部参数处理完后一次性拼接，不再对每个参数执行 {@link String#replace(CharSequence, CharSequence)}；
+ * 整数值直接以数字写入，不先转换为字符串。
+ * 2. 发送订阅前，未被 {@link org.sheedon.mqtt.retrofit.mqtt.Path @Path} 替换的占位层级替换为 {@code +}，
+ * 例如 "device/{id}/state" 订阅 "device/+/state"。
+ * 3. 占据整个层级的占位符记录其所在层级，收到消息时按层级从消息主题中取出对应的值，
+ * 只做一次顺序扫描，不使用正则表达式和 {@code split()}，通过 {@link Response#pathParams()} 获取。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 22:10
+ */
+final class TopicTemplate {
+
+    // 占位符之间的文本，比占位符多一个
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+    // 占据整个层级的占位符所在层级及其名称
+    private final int[] levels;
+    private final String[] levelNames;
+
+    private TopicTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+
+        List<Integer> levels = new ArrayList<>();
+        List<String> levelNames = new ArrayList<>();
+        int level = 0;
+        for (int i = 0; i < names.length; i++) {
+            level += count(literals[i], '/');
+            boolean opened = i == 0 && literals[0].isEmpty() || literals[i].endsWith("/");
+            boolean closed = i + 1 == names.length && literals[i + 1].isEmpty()
+                    || literals[i + 1].startsWith("/");
+            if (opened && closed && !names[i].isEmpty() && names[i].indexOf('/') < 0) {
+                levels.add(level);
+                levelNames.add(names[i]);
+            }
+            level += count(names[i], '/');
+        }
+        this.levels = new int[levels.size()];
+        for (int i = 0; i < this.levels.length; i++) {
+            this.levels[i] = levels.get(i);
+        }
+        this.levelNames = levelNames.toArray(new String[0]);
+    }
+
+    /**
+     * 编译主题、有效载荷或关键字，没有占位符时返回 null
+     */
+    @Nullable
+    static TopicTemplate compile(@Nullable String path) {
+        if (path == null || path.indexOf('{') < 0) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = path.indexOf('{', start)) >= 0) {
+            int close = path.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            literals.add(path.substring(start, open));
+            names.add(path.substring(open + 1, close));
+            start = close + 1;
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        literals.add(path.substring(start));
+        return new TopicTemplate(literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    private static int count(String text, char c) {
+        int count = 0;
+        for (int i = text.indexOf(c); i >= 0; i = text.indexOf(c, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 是否存在占据整个层级、可从消息主题中取值的占位符
+     */
+    boolean hasLevels() {
+        return levels.length > 0;
+    }
+
+    /**
+     * 将主题中未替换的占位层级替换为单层通配符
+     */
+    static String wildcardUnresolved(String topic) {
+        if (topic.indexOf('{') < 0) {
+            return topic;
+        }
+        StringBuilder builder = new StringBuilder(topic.length());
+        int start = 0;
+        while (true) {
+            int end = topic.indexOf('/', start);
+            if (end < 0) {
+                end = topic.length();
+            }
+            if (isPlaceholder(topic, start, end)) {
+                builder.append('+');
+            } else {
+                builder.append(topic, start, end);
+            }
+            if (end == topic.length()) {
+                break;
+            }
+            builder.append('/');
+            start = end + 1;
+        }
+        return builder.toString();
+    }
+
+    private static boolean isPlaceholder(String topic, int start, int end) {
+        return end - start > 2 && topic.charAt(start) == '{' && topic.charAt(end - 1) == '}';
+    }
+
+    /**
+     * 从消息主题中取出各占位层级的值，层级数不足时只返回已取到的值
+     */
+    Map<String, String> extract(@Nullable String topic) {
+        if (topic == null || levels.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> params = new LinkedHashMap<>(levelNames.length * 2);
+        int level = 0;
+        int start = 0;
+        int index = 0;
+        while (index < levels.length) {
+            int end = topic.indexOf('/', start);
+            if (end < 0) {
+                end = topic.length();
+            }
+            if (levels[index] == level) {
+                params.put(levelNames[index], topic.substring(start, end));
+                index++;
+            }
+            if (end == topic.length()) {
+                break;
+            }
+            start = end + 1;
+            level++;
+        }
+        return Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * 创建一次调用使用的占位符取值
+     */
+    Values newValues() {
+        return new Values();
+    }
+
+    /**
+     * 一次调用中各占位符的取值，未设置的占位符保持 {@code {name}} 原样
+     */
+    final class Values {
+        private final String[] texts = new String[names.length];
+        private final long[] numbers = new long[names.length];
+        private final boolean[] numeric = new boolean[names.length];
+
+        /**
+         * 设置名为 {@code name} 的所有占位符
+         */
+        void set(String name, String value) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    texts[i] = value;
+                    numeric[i] = false;
+                }
+            }
+        }
+
+        /**
+         * 以整数设置名为 {@code name} 的所有占位符
+         */
+        void set(String name, long value) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    texts[i] = null;
+                    numbers[i] = value;
+                    numeric[i] = true;
+                }
+            }
+        }
+
+        String render() {
+            StringBuilder builder = new StringBuilder(literalLength + names.length * 8);
+            for (int i = 0; i < names.length; i++) {
+                builder.append(literals[i]);
+                if (numeric[i]) {
+                    builder.append(numbers[i]);
+                } else if (texts[i] != null) {
+                    builder.append(texts[i]);
+                } else {
+                    builder.append('{').append(names[i]).append('}');
+                }
+            }
+            return builder.append(literals[names.length]).toString();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按主题层级组织的订阅主题索引，支持 {@code +}、{@code #} 通配符。
+ * <p>
+ * 1. 匹配一个主题的耗时只与主题层级数有关，与登记的订阅主题数量无关。
+ * 2. 节点不可变，登记、移除时复制根节点到目标节点的路径后替换根节点（写时复制），
+ * 因此匹配无需加锁，读到的总是某一时刻完整的索引。
+ * 3. 各节点的层级名称经过驻留，相同的层级名称只保存一份。
+ * <p>
+ * 以 {@code $} 开头的主题不会被第一层的通配符匹配。写操作需要由调用方同步。
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 21:05
+ */
+final class TopicTrie<V> {
+
+    private static final String SINGLE_LEVEL = "+";
+    private static final String MULTI_LEVEL = "#";
+
+    private final ConcurrentHashMap<String, String> segments = new ConcurrentHashMap<>();
+    private volatile Node<V> root = new Node<>(Collections.emptyMap(), null, null, new Object[0]);
+
+    /**
+     * 匹配结果的访问者
+     */
+    interface Visitor<V> {
+        void visit(V value);
+    }
+
+    /**
+     * 判断候选值是否满足条件
+     */
+    interface Predicate<V> {
+        boolean test(V value);
+    }
+
+    boolean isEmpty() {
+        Node<V> root = this.root;
+        return root.isEmpty();
+    }
+
+    /**
+     * 访问所有与主题 {@code topic} 匹配的订阅主题上登记的值
+     */
+    void match(String topic, Visitor<V> visitor) {
+        Node<V> root = this.root;
+        boolean system = !topic.isEmpty() && topic.charAt(0) == '$';
+        match(root, topic, 0, !system, visitor);
+    }
+
+    private static <V> void match(Node<V> node, String topic, int start,
+                                  boolean wildcards, Visitor<V> visitor) {
+        // '#' 同时匹配父级本身，例如 "a/#" 匹配 "a"
+        if (wildcards && node.multiLevel != null) {
+            node.multiLevel.visit(visitor);
+        }
+        if (start > topic.length()) {
+            node.visit(visitor);
+            return;
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = topic.length();
+        }
+        Node<V> child = node.children.get(topic.substring(start, end));
+        if (child != null) {
+            match(child, topic, end + 1, true, visitor);
+        }
+        if (wildcards && node.singleLevel != null) {
+            match(node.singleLevel, topic, end + 1, true, visitor);
+        }
+    }
+
+    /**
+     * 查找一个覆盖订阅主题 {@code filter} 的订阅主题上登记的值，即凡是与 {@code filter} 匹配的主题都与其匹配
+     */
+    @Nullable
+    V findCovering(String filter, Predicate<V> predicate) {
+        String[] levels = filter.split("/", -1);
+        // 与 match 一致，以 '$' 开头的主题不会被第一层的通配符覆盖
+        boolean system = levels[0].startsWith("$");
+        return cover(root, levels, 0, !system, predicate);
+    }
+
+    @Nullable
+    private static <V> V cover(Node<V> node, String[] levels, int index,
+                               boolean wildcards, Predicate<V> predicate) {
+        if (wildcards && node.multiLevel != null) {
+            V value = node.multiLevel.find(predicate);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (index == levels.length) {
+            return node.find(predicate);
+        }
+        String level = levels[index];
+        if (MULTI_LEVEL.equals(level)) {
+            // '#' 只能被上一级的 '#' 覆盖
+            return null;
+        }
+        if (!SINGLE_LEVEL.equals(level)) {
+            Node<V> child = node.children.get(level);
+            if (child != null) {
+                V value = cover(child, levels, index + 1, true, predicate);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        if (wildcards && node.singleLevel != null) {
+            return cover(node.singleLevel, levels, index + 1, true, predicate);
+        }
+        return null;
+    }
+
+    /**
+     * 在订阅主题 {@code filter} 上登记 {@code value}
+     */
+    void add(String filter, V value) {
+        root = update(root, filter.split("/", -1), 0, value, true);
+    }
+
+    /**
+     * 移除订阅主题 {@code filter} 上登记的 {@code value}
+     */
+    void remove(String filter, V value) {
+        Node<V> updated = update(root, filter.split("/", -1), 0, value, false);
+        root = updated != null ? updated : new Node<>(Collections.emptyMap(), null, null, new Object[0]);
+    }
+
+    /**
+     * 返回替换后的节点，节点为空时返回 null
+     */
+    @Nullable
+    private Node<V> update(@Nullable Node<V> node, String[] levels, int index, V value, boolean add) {
+        if (node == null) {
+            if (!add) {
+                return null;
+            }
+            node = new Node<>(Collections.emptyMap(), null, null, new Object[0]);
+        }
+
+        Node<V> result;
+        if (index == levels.length) {
+            result = new Node<>(node.children, node.singleLevel, node.multiLevel,
+                    add ? node.plus(value) : node.minus(value));
+        } else {
+            String level = levels[index];
+            if (SINGLE_LEVEL.equals(level)) {
+                result = new Node<>(node.children,
+                        update(node.singleLevel, levels, index + 1, value, add),
+                        node.multiLevel, node.values);
+            } else if (MULTI_LEVEL.equals(level)) {
+                result = new Node<>(node.children, node.singleLevel,
+                        update(node.multiLevel, levels, index + 1, value, add),
+                        node.values);
+            } else {
+                Node<V> child = update(node.children.get(level), levels, index + 1, value, add);
+                Map<String, Node<V>> children = new HashMap<>(node.children);
+                if (child != null) {
+                    children.put(intern(level), child);
+                } else {
+                    children.remove(level);
+                }
+                result = new Node<>(children.isEmpty() ? Collections.emptyMap() : children,
+                        node.singleLevel, node.multiLevel, node.values);
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private String intern(String level) {
+        String interned = segments.putIfAbsent(level, level);
+        return interned != null ? interned : level;
+    }
+
+    private static final class Node<V> {
+        final Map<String, Node<V>> children;
+        final @Nullable
+        Node<V> singleLevel;
+        final @Nullable
+        Node<V> multiLevel;
+        final Object[] values;
+
+        Node(Map<String, Node<V>> children, @Nullable Node<V> singleLevel,
+             @Nullable Node<V> multiLevel, Object[] values) {
+            this.children = children;
+            this.singleLevel = singleLevel;
+            this.multiLevel = multiLevel;
+            this.values = values;
+        }
+
+        boolean isEmpty() {
+            return values.length == 0 && children.isEmpty() && singleLevel == null && multiLevel == null;
+        }
+
+        @SuppressWarnings("unchecked")
+        void visit(Visitor<V> visitor) {
+            for (Object value : values) {
+                visitor.visit((V) value);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable
+        V find(Predicate<V> predicate) {
+            for (Object value : values) {
+                if (predicate.test((V) value)) {
+                    return (V) value;
+                }
+            }
+            return null;
+        }
+
+        Object[] plus(V value) {
+            Object[] updated = Arrays.copyOf(values, values.length + 1);
+            updated[values.length] = value;
+            return updated;
+        }
+
+        Object[] minus(V value) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == value) {
+                    Object[] updated = new Object[values.length - 1];
+                    System.arraycopy(values, 0, updated, 0, i);
+                    System.arraycopy(values, i + 1, updated, i, values.length - i - 1);
+                    return updated;
+                }
+            }
+            return values;
+        }
+    }
+}
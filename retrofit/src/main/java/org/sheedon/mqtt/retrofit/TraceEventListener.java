@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit;
+
+import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将 {@link Call}、{@link Observable} 的生命周期事件输出到系统 trace（systrace / Perfetto）中，
+ * 以便在同一份录制中对照 MQTT 调用耗时与 GC、锁竞争、线程调度等系统事件。
+ * <p>
+ * 输出的内容包括：
+ * <ul>
+ *   <li>{@code MQTT <方法名>}：从调用开始到结束的整体耗时；</li>
+ *   <li>{@code MQTT build <方法名>}：{@code RequestFactory.create} 构建请求的耗时；</li>
+ *   <li>{@code MQTT publish <主题>}：从交给 OkMqtt 发送到收到首个响应的耗时；</li>
+ *   <li>{@code MQTT convert <方法名>}：响应转换的耗时；</li>
+ *   <li>{@code MQTT dispatch <方法名>}：响应转换完成到回调在回调执行器上开始执行的耗时；</li>
+ *   <li>{@code MQTT payload <方法名>}：请求有效载荷的长度（计数器）。</li>
+ * </ul>
+ * 只有在 trace 录制开启时创建的调用才会输出事件，未录制时工厂直接返回 {@link EventListener#NONE}。
+ *
+ * <pre><code>
+ * Retrofit retrofit = new Retrofit.Builder()
+ *     .client(client)
+ *     .eventListenerFactory(TraceEventListener.factory())
+ *     .build();
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 14:36
+ */
+public final class TraceEventListener extends EventListener {
+
+    // systrace 对 section 名称的长度限制
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private static final AtomicInteger NEXT_COOKIE = new AtomicInteger();
+
+    private static final Factory FACTORY = method -> TraceCompat.isEnabled()
+            ? new TraceEventListener(method)
+            : EventListener.NONE;
+
+    /**
+     * 返回输出 trace 事件的监听器工厂
+     */
+    public static Factory factory() {
+        return FACTORY;
+    }
+
+    private final String callSection;
+    private final String buildSection;
+    private final String convertSection;
+    private final String dispatchSection;
+    private final String payloadCounter;
+    private final int cookie = NEXT_COOKIE.incrementAndGet();
+
+    private volatile @Nullable
+    String topic;
+    private volatile boolean callStarted;
+    private volatile boolean buildStarted;
+    private volatile boolean convertStarted;
+    private volatile int dispatchCookie;
+    private volatile @Nullable
+    String publishSection;
+
+    private TraceEventListener(Method method) {
+        String methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        this.callSection = sectionName("MQTT ", methodName);
+        this.buildSection = sectionName("MQTT build ", methodName);
+        this.convertSection = sectionName("MQTT convert ", methodName);
+        this.dispatchSection = sectionName("MQTT dispatch ", methodName);
+        this.payloadCounter = sectionName("MQTT payload ", methodName);
+    }
+
+    @Override
+    public void callStart() {
+        callStarted = true;
+        TraceCompat.beginAsyncSection(callSection, cookie);
+    }
+
+    @Override
+    public void requestBuildStart() {
+        buildStarted = true;
+        TraceCompat.beginAsyncSection(buildSection, cookie);
+    }
+
+    @Override
+    public void requestBuildEnd(@Nullable String topic) {
+        this.topic = topic;
+        endBuild();
+    }
+
+    @Override
+    public void bodyConvertEnd(int bodyLength) {
+        TraceCompat.setCounter(payloadCounter, bodyLength);
+    }
+
+    @Override
+    public void publishStart() {
+        String topic = this.topic;
+        String section = sectionName("MQTT publish ", topic == null ? "" : topic);
+        publishSection = section;
+        TraceCompat.beginAsyncSection(section, cookie);
+    }
+
+    @Override
+    public void responseReceived(@Nullable String topic) {
+        endPublish();
+    }
+
+    @Override
+    public void responseConvertStart() {
+        convertStarted = true;
+        TraceCompat.beginAsyncSection(convertSection, cookie);
+    }
+
+    @Override
+    public void responseConvertEnd() {
+        endConvert();
+
+        // 订阅会连续收到消息，若上一条消息尚未切换到回调执行器，则先结束它
+        endDispatch();
+        int dispatch = NEXT_COOKIE.incrementAndGet();
+        dispatchCookie = dispatch;
+        TraceCompat.beginAsyncSection(dispatchSection, dispatch);
+    }
+
+    @Override
+    public void callbackDispatched() {
+        endDispatch();
+    }
+
+    @Override
+    public void callEnd() {
+        endAll();
+    }
+
+    @Override
+    public void callFailed(@Nullable Throwable t) {
+        endAll();
+    }
+
+    private void endAll() {
+        endBuild();
+        endPublish();
+        endConvert();
+        endDispatch();
+        if (callStarted) {
+            callStarted = false;
+            TraceCompat.endAsyncSection(callSection, cookie);
+        }
+    }
+
+    private void endBuild() {
+        if (buildStarted) {
+            buildStarted = false;
+            TraceCompat.endAsyncSection(buildSection, cookie);
+        }
+    }
+
+    private void endPublish() {
+        String section = publishSection;
+        if (section != null) {
+            publishSection = null;
+            TraceCompat.endAsyncSection(section, cookie);
+        }
+    }
+
+    private void endConvert() {
+        if (convertStarted) {
+            convertStarted = false;
+            TraceCompat.endAsyncSection(convertSection, cookie);
+        }
+    }
+
+    private void endDispatch() {
+        int dispatch = dispatchCookie;
+        if (dispatch != 0) {
+            dispatchCookie = 0;
+            TraceCompat.endAsyncSection(dispatchSection, dispatch);
+        }
+    }
+
+    private static String sectionName(String prefix, String name) {
+        String section = prefix + name;
+        return section.length() > MAX_SECTION_NAME_LENGTH
+                ? section.substring(0, MAX_SECTION_NAME_LENGTH)
+                : section;
+    }
+}
@@ -544,6 +544,92 @@ final class Utils {
         }
     }
 
+    /**
+     * 将 OkMqtt 反馈的连接断开、客户端超时失败转换为 {@link MqttDisconnectedException}、
+     * {@link MqttTimeoutException}，其余失败原样返回。
+     * 原始失败只有原因码时返回共享实例，带有底层原因（例如连接断开时的 IOException）时作为 cause 保留。
+     */
+    static @Nullable
+    Throwable failure(@Nullable Throwable t) {
+        if (!(t instanceof org.eclipse.paho.client.mqttv3.MqttException)) {
+            return t;
+        }
+        switch (((org.eclipse.paho.client.mqttv3.MqttException) t).getReasonCode()) {
+            case org.eclipse.paho.client.mqttv3.MqttException.REASON_CODE_CLIENT_TIMEOUT:
+                return t.getCause() == null
+                        ? MqttTimeoutException.INSTANCE
+                        : new MqttTimeoutException().initCause(t);
+            case org.eclipse.paho.client.mqttv3.MqttException.REASON_CODE_CLIENT_NOT_CONNECTED:
+            case org.eclipse.paho.client.mqttv3.MqttException.REASON_CODE_CONNECTION_LOST:
+            case org.eclipse.paho.client.mqttv3.MqttException.REASON_CODE_CLIENT_DISCONNECTING:
+            case org.eclipse.paho.client.mqttv3.MqttException.REASON_CODE_CLIENT_CLOSED:
+                return t.getCause() == null
+                        ? MqttDisconnectedException.INSTANCE
+                        : new MqttDisconnectedException().initCause(t);
+            default:
+                return t;
+        }
+    }
+
+    /**
+     * 将基本类型数组的各元素以 {@code separator} 分隔直接写入 {@code builder}，不经过装箱以及中间字符串；
+     * {@code array} 不是基本类型数组时不写入并返回 false
+     */
+    static boolean appendPrimitiveArray(StringBuilder builder, Object array, char separator) {
+        if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof double[]) {
+            double[] values = (double[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof byte[]) {
+            byte[] values = (byte[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof char[]) {
+            char[] values = (char[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else if (array instanceof boolean[]) {
+            boolean[] values = (boolean[]) array;
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(separator);
+                builder.append(values[i]);
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
     /** Returns an immutable copy of {@code list}. */
     public static <T> List<T> immutableList(List<T> list) {
         return Collections.unmodifiableList(new ArrayList<>(list));
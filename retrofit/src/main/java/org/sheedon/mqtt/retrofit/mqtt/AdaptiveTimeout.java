@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Derives the response timeout of the method from the observed response latency.
+ *
+ * <p>Each response updates a smoothed latency and its mean deviation; the timeout is the smoothed
+ * latency plus four deviations, kept within [{@link #min()}, {@link #max()}]. Every timeout doubles
+ * the current value until the next response arrives. Until the first response, the timeout of
+ * {@link TIMEOUT @TIMEOUT} (or the globally configured timeout) is used within the same bounds.
+ * {@link CallTimeout @CallTimeout} still overrides the timeout of a single call.
+ *
+ * <p>Simple Example:
+ *
+ * <pre><code>
+ * &#64;TOPIC("device/query")
+ * &#64;SUBSCRIBE("device/query/reply")
+ * &#64;AdaptiveTimeout(min = 200, max = 10_000)
+ * Call&lt;Status&gt; query(@Body Query query);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface AdaptiveTimeout {
+
+    /**
+     * The lower bound of the timeout.
+     */
+    long min();
+
+    /**
+     * The upper bound of the timeout.
+     */
+    long max();
+
+    /**
+     * Unit of {@link #min()} and {@link #max()}
+     */
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 批量接收订阅消息，适用于高频的遥测数据等场景。
+ * <p>
+ * 方法返回类型需为 {@code Observable<List<T>>}，每条消息按 {@code T} 转换后放入预分配容量的列表，
+ * 满 {@link #maxSize()} 条或首条消息到达后经过 {@link #maxDelayMs()} 毫秒时整批回调一次，
+ * 每批只切换一次回调线程。回调的 {@code Response} 对应该批最后一条消息。
+ *
+ * <pre><code>
+ * &#64;Batch(maxSize = 500, maxDelayMs = 50)
+ * &#64;SUBSCRIBE("device/+/telemetry")
+ * Observable&lt;List&lt;Telemetry&gt;&gt; telemetry();
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:55
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Batch {
+
+    /**
+     * 每批最多包含的消息数
+     */
+    int maxSize() default 100;
+
+    /**
+     * 每批自首条消息到达起最长的等待时间，单位毫秒
+     */
+    long maxDelayMs() default 50;
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 为 {@code Observable} 的消息回调配置有界缓冲区。
+ * <p>
+ * 默认情况下，每条转换后的消息都直接提交到回调线程（callbackExecutor），回调处理慢于消息到达时，
+ * 回调线程的任务队列会无限增长。配置后，消息先写入容量为 {@link #capacity()} 的环形缓冲区，
+ * 由回调线程串行取出分发，缓冲区满时按 {@link #overflow()} 处理。
+ * 缓冲区占用与丢弃数量可通过 {@code BufferStats.of(observable)} 获取。
+ * <p>
+ * 仅作用于订阅消息，订阅确认与失败回调不经过缓冲区；
+ * 需要回调线程，与 {@code @SkipCallbackExecutor} 同时使用或未配置 callbackExecutor 时，解析服务方法时抛出异常。
+ *
+ * <pre><code>
+ * &#64;Buffer(capacity = 256, overflow = Buffer.Overflow.DROP_OLDEST)
+ * &#64;SUBSCRIBE("device/+/telemetry")
+ * Observable&lt;Telemetry&gt; telemetry();
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:45
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Buffer {
+
+    /**
+     * 缓冲区容量
+     */
+    int capacity() default 128;
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    Overflow overflow() default Overflow.DROP_OLDEST;
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    enum Overflow {
+        /**
+         * 丢弃缓冲区中最旧的消息
+         */
+        DROP_OLDEST,
+        /**
+         * 丢弃新到达的消息
+         */
+        DROP_NEWEST,
+        /**
+         * 阻塞接收线程，直到缓冲区有空位。回调线程与接收线程相同时不可使用。
+         * <p>
+         * 接收线程即 OkMqtt / Paho 的消息回调线程，阻塞期间该客户端的所有订阅都收不到消息，
+         * 确认报文与心跳的处理也会被推迟，回调长时间处理不过来时可能导致连接超时断开。
+         * 仅适用于回调处理稳定快于消息到达、只偶尔出现突发的场景，否则应选择丢弃策略。
+         */
+        BLOCK,
+        /**
+         * 丢弃新到达的消息，并通过 {@code onFailure} 反馈缓冲区溢出。
+         * 同一个分发周期内的多次溢出合并为一次反馈，不会为每条消息单独回调
+         */
+        ERROR
+    }
+}
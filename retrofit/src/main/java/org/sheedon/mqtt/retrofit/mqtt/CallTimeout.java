@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * The response timeout of this call, replacing {@link TIMEOUT @TIMEOUT} and the globally
+ * configured timeout.
+ *
+ * <p>The parameter must be a {@code long}, {@code int} or their boxed types, in {@link #unit()}.
+ * A {@code null} value keeps the timeout of the method.
+ *
+ * <p>Simple Example:
+ *
+ * <pre><code>
+ * &#64;TOPIC("device/alarm")
+ * &#64;SUBSCRIBE("device/alarm/ack")
+ * Call&lt;Ack&gt; alarm(@CallTimeout(unit = TimeUnit.MILLISECONDS) long timeout, @Body Alarm alarm);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+@Documented
+@Target(PARAMETER)
+@Retention(RUNTIME)
+public @interface CallTimeout {
+
+    /**
+     * Timeout unit
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 通过关联 ID 匹配请求与响应，替代 {@link SUBSCRIBE @SUBSCRIBE}、{@link KEYWORD @KEYWORD}。
+ * <p>
+ * 每次调用生成一个唯一的关联 ID，替换 {@link TOPIC @TOPIC}、{@link PAYLOAD @PAYLOAD} 中的 {@code {cid}}，
+ * 或通过 {@link #field()} 写入表单；响应方将响应发送到 {@link #reply()} 中 {@code {cid}} 替换为该 ID 的主题。
+ * 同一个响应主题的所有调用共用一个订阅（{@code {cid}} 替换为 {@code +}），
+ * 收到响应后直接从主题中取出 ID 找到对应的调用，无需解析有效载荷。
+ * <p>
+ * For example：
+ * <pre><code>
+ * &#64;Correlated(reply = "device/reply/{cid}")
+ * &#64;TOPIC("device/cmd/{cid}")
+ * Call&lt;Result&gt; command(&#64;Body Command command);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 19:02
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Correlated {
+
+    /**
+     * 关联 ID 的占位符
+     */
+    String PLACEHOLDER = "{cid}";
+
+    /**
+     * 响应主题，必须包含一个完整层级的 {@code {cid}}，例如 "device/reply/{cid}"
+     */
+    String reply();
+
+    /**
+     * whether for reply value changes happened
+     * if isSplice is false，reply = baseTopic + reply
+     */
+    boolean isSplice() default false;
+
+    /**
+     * 响应主题订阅的 mqtt quality of service value in the range of 0 to 2
+     */
+    @QosScope
+    int qos() default 0;
+
+    /**
+     * 表单请求中写入关联 ID 的字段名，为空时不写入
+     */
+    String field() default "";
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 标记该 {@link TOPIC @TOPIC} 消息需要可靠投递。
+ * <p>
+ * 通过 {@code Call.publish()} 发送时，若连接已断开（或离线期间积压的消息尚未补发完），
+ * 消息会先追加到 {@link org.sheedon.mqtt.retrofit.Outbox Outbox} 的本地日志中，
+ * 待连接恢复后按原顺序补发。需要通过 {@code Retrofit.Builder.outbox(File)} 配置日志目录。
+ * <p>
+ * 仅对无响应的发送生效，{@code Call.enqueue(Callback)} 仍按原有方式发送并反馈。
+ *
+ * <pre><code>
+ * &#64;Durable
+ * &#64;TOPIC("device/{id}/report")
+ * Call&lt;Void&gt; report(&#64;Path("id") String id, &#64;Body Report report);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 17:20
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Durable {
+}
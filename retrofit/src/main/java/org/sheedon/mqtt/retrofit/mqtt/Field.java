@@ -30,7 +30,10 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * <p>Values are converted to strings using {@link Retrofit#stringConverter(Type, Annotation[])} (or
  * {@link Object#toString()}, if no matching string converter is installed) and then form payload
  * encoded. {@code null} values are ignored. Passing a {@link java.util.List List} or array will
- * result in a field pair for each non-{@code null} item.
+ * result in a field pair for each non-{@code null} item, or a single array field if the installed
+ * {@link org.sheedon.mqtt.retrofit.FormBodyConverter FormBodyConverter} writes arrays, such as the
+ * JSON form of the Gson converter. A {@code FormBodyConverter} may instead convert the whole
+ * collection as one value, see {@link org.sheedon.mqtt.retrofit.FormBodyConverter#expandArray(Type)}.
  *
  * <p>Simple Example:
  *
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.lang.reflect.Type;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Named key/value pairs for a form-encoded request.
+ *
+ * <p>Each entry is written to the form as if it were a {@link Field @Field}. Values are converted
+ * to strings using {@link Retrofit#stringConverter(Type, Annotation[])} (or {@link Object#toString()},
+ * if no matching string converter is installed). The converter is resolved once for the declared
+ * value type, or once per runtime class when the value type is {@code Object} or {@code ?}.
+ * {@code null} values are ignored, {@code null} keys are not allowed.
+ *
+ * <p>Simple Example:
+ *
+ * <pre><code>
+ * &#64;FormEncoded
+ * &#64;TOPIC("device/report")
+ * Call&lt;ResponseBody&gt; report(@FieldMap Map&lt;String, ?&gt; fields);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+@Documented
+@Target(PARAMETER)
+@Retention(RUNTIME)
+public @interface FieldMap {
+}
@@ -27,7 +27,8 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 /**
  * Named replacement in a TOPIC/KEYWORD/SUBSCRIBE/PAYLOAD path segment. Values are converted to strings
  * using {@link Retrofit#stringConverter(Type, Annotation[])} (or {@link Object#toString()}, if no matching
- * string converter is installed).
+ * string converter is installed). Passing an {@link Iterable} or array joins its non-{@code null}
+ * items with {@code ,}.
  *
  * <p>Simple example:
  *
@@ -36,6 +37,15 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * Call&lt;ResponseBody&gt; example(@Path("id") int id);
  * </code></pre>
  * <p>
+ * A whole {@link SUBSCRIBE} topic level such as {@code {id}} that is not replaced is subscribed as
+ * the {@code +} wildcard, and the matched value of each received message is available from
+ * {@code Response.pathParams()}:
+ *
+ * <pre><code>
+ * &#64;SUBSCRIBE("device/{id}/state")
+ * Observable&lt;State&gt; states();
+ * </code></pre>
+ * <p>
  *
  * @Author: sheedon
  * @Email: sheedonsun@163.com
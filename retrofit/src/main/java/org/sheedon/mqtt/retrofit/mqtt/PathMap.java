@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.lang.reflect.Type;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Named replacements in a TOPIC/KEYWORD/SUBSCRIBE/PAYLOAD path segment, one for each entry.
+ *
+ * <p>Each entry replaces {@code {key}} as if it were a {@link Path @Path} of the same {@link #type()}.
+ * Values are converted to strings using {@link Retrofit#stringConverter(Type, Annotation[])} (or
+ * {@link Object#toString()}, if no matching string converter is installed). The converter is resolved
+ * once for the declared value type, or once per runtime class when the value type is {@code Object}
+ * or {@code ?}. Neither keys nor values may be {@code null}.
+ *
+ * <p>Simple example:
+ *
+ * <pre><code>
+ * &#64;TOPIC("site/{site}/device/{id}/state")
+ * Call&lt;ResponseBody&gt; state(@PathMap Map&lt;String, String&gt; path);
+ * </code></pre>
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(PARAMETER)
+public @interface PathMap {
+
+    /**
+     * Configure path type, same as {@link Path#type()}.
+     */
+    @PathType int type() default PathType.TOPIC;
+}
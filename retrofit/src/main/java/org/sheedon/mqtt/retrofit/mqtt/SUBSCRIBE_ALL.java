@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 Sheedon.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sheedon.mqtt.retrofit.mqtt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Subscribe several topics with a single SUBSCRIBE packet, instead of building an
+ * {@code org.sheedon.mqtt.Subscribe} by hand and passing it with {@link Body @Body}.
+ * Only available on methods returning {@code Observable}.
+ * For example：
+ *
+ * <pre><code>
+ * &#64;SUBSCRIBE_ALL({
+ *     &#64;SUBSCRIBE("device/+/state"),
+ *     &#64;SUBSCRIBE(value = "device/+/alarm", qos = 1)
+ * })
+ * Observable&lt;ResponseBody&gt; listenDevices();
+ * </code></pre>
+ * <p>
+ * Unresolved {@code {name}} topic levels are subscribed as {@code +}.
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 22:48
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface SUBSCRIBE_ALL {
+
+    /**
+     * The topics to subscribe, each {@link SUBSCRIBE} is spliced with baseTopic by its own
+     * {@link SUBSCRIBE#isSplice()}.
+     */
+    SUBSCRIBE[] value();
+}
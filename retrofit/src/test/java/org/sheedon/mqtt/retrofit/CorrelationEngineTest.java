@@ -0,0 +1,221 @@
+package org.sheedon.mqtt.retrofit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CorrelationEngine} 等待表的探测、墓碑复用，以及响应、超时、取消之间的竞争
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+public class CorrelationEngineTest {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    // 不自动推进，时间轮只由测试推进
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1) {
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+                                                         long delay, TimeUnit unit) {
+            return null;
+        }
+    };
+    private final DeadlineWheel wheel = new DeadlineWheel(scheduler, System.nanoTime());
+    private final CorrelationEngine engine = new CorrelationEngine(null, wheel);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void replyCompletesOnce() {
+        RecordingPending pending = register(1, TIMEOUT_NANOS);
+
+        assertTrue(reply(1));
+        assertFalse(reply(1));
+        engine.cancel(1, new MqttCanceledException());
+
+        assertEquals(1, pending.replies.get());
+        assertEquals(0, pending.failures.size());
+    }
+
+    @Test
+    public void replyIgnoresForeignId() {
+        RecordingPending pending = register(1, TIMEOUT_NANOS);
+
+        assertFalse(engine.reply("reply/zzzz1", 1, null));
+        assertFalse(engine.reply("reply", 1, null));
+        assertEquals(0, pending.replies.get());
+    }
+
+    @Test
+    public void collidingIdsProbePastTombstone() {
+        long first = 1;
+        long second = first + CorrelationEngine.CAPACITY;
+        RecordingPending a = register(first, TIMEOUT_NANOS);
+        RecordingPending b = register(second, TIMEOUT_NANOS);
+
+        // a 的槽位变为墓碑后，探测仍需越过它找到 b
+        engine.cancel(first, new MqttCanceledException());
+        assertEquals(1, a.failures.size());
+        assertTrue(reply(second));
+        assertEquals(1, b.replies.get());
+    }
+
+    @Test
+    public void tombstoneSlotIsReused() {
+        long first = 1;
+        long second = first + CorrelationEngine.CAPACITY;
+        long third = first + 2L * CorrelationEngine.CAPACITY;
+        register(first, TIMEOUT_NANOS);
+        RecordingPending b = register(second, TIMEOUT_NANOS);
+        engine.cancel(first, new MqttCanceledException());
+
+        // 复用 a 留下的墓碑，b 仍在原槽位
+        RecordingPending c = register(third, TIMEOUT_NANOS);
+        assertTrue(reply(third));
+        assertTrue(reply(second));
+        assertFalse(reply(first));
+        assertEquals(1, b.replies.get());
+        assertEquals(1, c.replies.get());
+    }
+
+    @Test
+    public void fullTableRejectsRegistration() {
+        for (int id = 1; id <= CorrelationEngine.CAPACITY; id++) {
+            register(id, TIMEOUT_NANOS);
+        }
+        try {
+            register(CorrelationEngine.CAPACITY + 1, TIMEOUT_NANOS);
+            throw new AssertionError("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // 等待表已满
+        }
+
+        // 完成一个调用后空出的槽位可再次使用
+        assertTrue(reply(7));
+        register(CorrelationEngine.CAPACITY + 1, TIMEOUT_NANOS);
+        assertTrue(reply(CorrelationEngine.CAPACITY + 1));
+    }
+
+    @Test
+    public void timeoutFailsWithTimeoutException() {
+        RecordingPending pending = register(1, 0);
+
+        wheel.advanceTo(System.nanoTime() + DeadlineWheel.TICK_NANOS);
+
+        assertEquals(1, pending.failures.size());
+        assertTrue(pending.failures.get(0) instanceof MqttTimeoutException);
+        assertFalse(reply(1));
+        assertEquals(0, pending.replies.get());
+    }
+
+    @Test
+    public void replyCancelsDeadline() {
+        RecordingPending pending = register(1, 0);
+        assertTrue(reply(1));
+
+        wheel.advanceTo(System.nanoTime() + DeadlineWheel.TICK_NANOS);
+
+        assertEquals(1, pending.replies.get());
+        assertEquals(0, pending.failures.size());
+    }
+
+    @Test
+    public void replyTimeoutCancelRaceCompletesEachCallOnce() throws Exception {
+        int count = 2000;
+        List<RecordingPending> pendings = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            pendings.add(register(id, 0));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread replier = new Thread(() -> {
+            await(start);
+            for (int id = 1; id <= count; id++) {
+                reply(id);
+            }
+        });
+        Thread canceler = new Thread(() -> {
+            await(start);
+            for (int id = count; id >= 1; id--) {
+                engine.cancel(id, new MqttCanceledException());
+            }
+        });
+        // 时间轮只能由一个线程推进
+        Thread timer = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < 10; i++) {
+                wheel.advanceTo(System.nanoTime() + DeadlineWheel.TICK_NANOS);
+            }
+        });
+        replier.start();
+        canceler.start();
+        timer.start();
+        start.countDown();
+        replier.join();
+        canceler.join();
+        timer.join();
+
+        for (RecordingPending pending : pendings) {
+            assertEquals("call " + pending.id, 1, pending.replies.get() + pending.failures.size());
+        }
+    }
+
+    private RecordingPending register(long id, long timeoutNanos) {
+        RecordingPending pending = new RecordingPending(id, timeoutNanos);
+        engine.register(pending);
+        return pending;
+    }
+
+    private boolean reply(long id) {
+        return engine.reply("reply/" + engine.format(id), 1, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RecordingPending extends CorrelationEngine.Pending {
+        final AtomicInteger replies = new AtomicInteger();
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+        RecordingPending(long id, long timeoutNanos) {
+            super(id, timeoutNanos);
+        }
+
+        @Override
+        void publish() {
+        }
+
+        @Override
+        void onReply(org.sheedon.mqtt.Response rawResponse) {
+            replies.incrementAndGet();
+        }
+
+        @Override
+        void onFailure(Throwable t) {
+            failures.add(t);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.sheedon.mqtt.retrofit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DeadlineWheel} 的到期、跨圈与取消，由测试手动推进时间
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+public class DeadlineWheelTest {
+
+    private static final long TICK = DeadlineWheel.TICK_NANOS;
+
+    // 不自动推进，时间轮只由测试推进
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1) {
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+                                                         long delay, TimeUnit unit) {
+            return null;
+        }
+    };
+    private final DeadlineWheel wheel = new DeadlineWheel(scheduler, 0);
+    private final List<String> expired = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void expireAtDeadline() {
+        wheel.schedule(timeout("a", 25 * TICK / 10));
+
+        wheel.advanceTo(2 * TICK);
+        assertEquals(new ArrayList<String>(), expired);
+
+        wheel.advanceTo(3 * TICK);
+        assertEquals(Arrays.asList("a"), expired);
+
+        wheel.advanceTo(10 * TICK);
+        assertEquals(Arrays.asList("a"), expired);
+    }
+
+    @Test
+    public void expireAfterFullRounds() {
+        long deadlineTick = 2L * DeadlineWheel.WHEEL_SIZE + 88;
+        wheel.schedule(timeout("a", deadlineTick * TICK));
+
+        // 前两圈经过同一格时只减少剩余圈数
+        wheel.advanceTo(88 * TICK);
+        wheel.advanceTo((DeadlineWheel.WHEEL_SIZE + 88) * TICK);
+        wheel.advanceTo((deadlineTick - 1) * TICK);
+        assertEquals(new ArrayList<String>(), expired);
+
+        wheel.advanceTo(deadlineTick * TICK);
+        assertEquals(Arrays.asList("a"), expired);
+    }
+
+    @Test
+    public void expireOverdueDeadlineOnNextTick() {
+        wheel.advanceTo(100 * TICK);
+        wheel.schedule(timeout("a", 10 * TICK));
+
+        wheel.advanceTo(101 * TICK);
+        assertEquals(Arrays.asList("a"), expired);
+    }
+
+    @Test
+    public void cancelBeforeAdd() {
+        DeadlineWheel.Timeout timeout = timeout("a", 5 * TICK);
+        wheel.schedule(timeout);
+        assertTrue(wheel.cancel(timeout));
+        assertFalse(wheel.cancel(timeout));
+
+        wheel.advanceTo(10 * TICK);
+        assertEquals(new ArrayList<String>(), expired);
+    }
+
+    @Test
+    public void cancelAfterAdd() {
+        DeadlineWheel.Timeout a = timeout("a", 5 * TICK);
+        DeadlineWheel.Timeout b = timeout("b", 5 * TICK);
+        DeadlineWheel.Timeout c = timeout("c", 5 * TICK);
+        wheel.schedule(a);
+        wheel.schedule(b);
+        wheel.schedule(c);
+        // 推进一格，截止时间已放入格内链表
+        wheel.advanceTo(TICK);
+
+        assertTrue(wheel.cancel(b));
+        wheel.advanceTo(10 * TICK);
+        assertEquals(Arrays.asList("a", "c"), expired);
+    }
+
+    @Test
+    public void cancelAfterExpire() {
+        DeadlineWheel.Timeout timeout = timeout("a", 5 * TICK);
+        wheel.schedule(timeout);
+        wheel.advanceTo(10 * TICK);
+
+        assertFalse(wheel.cancel(timeout));
+        assertEquals(Arrays.asList("a"), expired);
+    }
+
+    private DeadlineWheel.Timeout timeout(String name, long deadlineNanos) {
+        return new DeadlineWheel.Timeout(deadlineNanos) {
+            @Override
+            void expire() {
+                expired.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package org.sheedon.mqtt.retrofit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TopicTrie} 的匹配与覆盖查找
+ *
+ * @Author: sheedon
+ * @Email: sheedonsun@163.com
+ * @Date: 2026/10/18 23:59
+ */
+public class TopicTrieTest {
+
+    private final TopicTrie<String> trie = new TopicTrie<>();
+
+    @Test
+    public void matchExactTopic() {
+        trie.add("a/b/c", "exact");
+        trie.add("a/b", "parent");
+
+        assertEquals(Collections.singletonList("exact"), match("a/b/c"));
+        assertEquals(Collections.singletonList("parent"), match("a/b"));
+        assertEquals(Collections.emptyList(), match("a/b/c/d"));
+    }
+
+    @Test
+    public void matchSingleLevelWildcard() {
+        trie.add("a/+/c", "single");
+
+        assertEquals(Collections.singletonList("single"), match("a/b/c"));
+        assertEquals(Collections.singletonList("single"), match("a//c"));
+        assertEquals(Collections.emptyList(), match("a/b/d"));
+        assertEquals(Collections.emptyList(), match("a/b/c/d"));
+    }
+
+    @Test
+    public void matchMultiLevelWildcardIncludesParent() {
+        trie.add("a/#", "multi");
+
+        assertEquals(Collections.singletonList("multi"), match("a"));
+        assertEquals(Collections.singletonList("multi"), match("a/b"));
+        assertEquals(Collections.singletonList("multi"), match("a/b/c"));
+        assertEquals(Collections.emptyList(), match("b"));
+    }
+
+    @Test
+    public void matchVisitsEveryMatchingFilter() {
+        trie.add("a/b", "exact");
+        trie.add("a/+", "single");
+        trie.add("a/#", "multi");
+        trie.add("#", "all");
+
+        List<String> matched = match("a/b");
+        Collections.sort(matched);
+        assertEquals(Arrays.asList("all", "exact", "multi", "single"), matched);
+    }
+
+    @Test
+    public void rootWildcardsDoNotMatchSystemTopics() {
+        trie.add("#", "all");
+        trie.add("+/broker", "single");
+        trie.add("$SYS/#", "system");
+
+        assertEquals(Collections.singletonList("system"), match("$SYS/broker"));
+
+        List<String> matched = match("SYS/broker");
+        Collections.sort(matched);
+        assertEquals(Arrays.asList("all", "single"), matched);
+    }
+
+    @Test
+    public void removeRestoresEmptyTrie() {
+        trie.add("a/+/c", "single");
+        trie.add("a/#", "multi");
+
+        trie.remove("a/+/c", "single");
+        assertEquals(Collections.singletonList("multi"), match("a/b/c"));
+
+        trie.remove("a/#", "multi");
+        assertTrue(trie.isEmpty());
+        assertEquals(Collections.emptyList(), match("a/b/c"));
+    }
+
+    @Test
+    public void coverByWildcards() {
+        trie.add("a/#", "multi");
+        trie.add("a/+/c", "single");
+
+        assertSame("multi", trie.findCovering("a/b/c", value -> true));
+        assertSame("multi", trie.findCovering("a/+/#", value -> true));
+        assertSame("single", trie.findCovering("a/b/c", value -> value.equals("single")));
+        assertSame("single", trie.findCovering("a/+/c", value -> value.equals("single")));
+        assertNull(trie.findCovering("a/b/#", value -> value.equals("single")));
+        assertNull(trie.findCovering("b/c", value -> true));
+    }
+
+    @Test
+    public void multiLevelFilterOnlyCoveredByMultiLevel() {
+        trie.add("a/+", "single");
+
+        assertNull(trie.findCovering("a/#", value -> true));
+
+        trie.add("#", "all");
+        assertSame("all", trie.findCovering("a/#", value -> true));
+    }
+
+    @Test
+    public void rootWildcardsDoNotCoverSystemTopics() {
+        trie.add("#", "all");
+        trie.add("+/+", "single");
+
+        assertNull(trie.findCovering("$SYS/broker", value -> true));
+        assertNull(trie.findCovering("$SYS/#", value -> true));
+        assertSame("all", trie.findCovering("SYS/broker", value -> value.equals("all")));
+
+        trie.add("$SYS/#", "system");
+        assertSame("system", trie.findCovering("$SYS/broker", value -> true));
+    }
+
+    private List<String> match(String topic) {
+        List<String> matched = new ArrayList<>();
+        trie.match(topic, matched::add);
+        return matched;
+    }
+}
@@ -21,24 +21,37 @@ class RetrofitClient {
 
     private var mClient: OkMqttClient? = null
 
+    private var baseRetrofit: Retrofit? = null
+
 
     /**
      * 根据传入的baseTopic，和api创建retrofit
+     * 不同 baseTopic 的 retrofit 由同一个基础 retrofit 派生，共用接口方法的解析结果
      */
     fun <T> createBaseApi(clazz: Class<T>, baseUrl: String): T {
-        var retrofit = retrofitMap[clazz.canonicalName!!]
+        var retrofit = retrofitMap[baseUrl]
         if (retrofit == null) {
-            var builder = Retrofit.Builder()
+            retrofit = loadBaseRetrofit().newBuilder()
                 .baseTopic(baseUrl)
-                .client(loadOkMqttClient())
-
-            builder = setRetrofitBuilder(builder)
-            retrofit = builder.build()
-            retrofitMap[clazz.canonicalName!!] = retrofit
+                .build()
+            retrofitMap[baseUrl] = retrofit
         }
         return retrofit!!.create(clazz)
     }
 
+    /**
+     * 创建基础 retrofit
+     */
+    private fun loadBaseRetrofit(): Retrofit {
+        if (baseRetrofit != null) {
+            return baseRetrofit!!
+        }
+        val builder = Retrofit.Builder()
+            .client(loadOkMqttClient())
+        baseRetrofit = setRetrofitBuilder(builder).build()
+        return baseRetrofit!!
+    }
+
     /**
      * 创建OkMqttClient
      */